@@ -0,0 +1,62 @@
+package structures;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Loading and saving whole boards of 1k to 500k lines.
+ *
+ * @author Joyce Gill
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class AACMappingsBenchmark {
+  @Param({"1000", "10000", "100000", "500000"})
+  int lines;
+
+  Path board;
+  Path saved;
+  AACMappings mappings;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    this.board = BoardGenerator.write(this.lines);
+    this.saved = Files.createTempFile("saved-", ".txt");
+    this.mappings = new AACMappings(this.board.toString());
+  } // setUp()
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(this.board);
+    Files.deleteIfExists(this.saved);
+  } // tearDown()
+
+  @Benchmark
+  public AACMappings load() {
+    return new AACMappings(this.board.toString());
+  } // load()
+
+  @Benchmark
+  public void writeToFile() {
+    this.mappings.writeToFile(this.saved.toString());
+  } // writeToFile()
+} // class AACMappingsBenchmark
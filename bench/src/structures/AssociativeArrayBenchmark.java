@@ -0,0 +1,148 @@
+package structures;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * AssociativeArray operations at sizes from 10 to 1M, each next to the same
+ * operation on java.util.HashMap as a baseline.
+ *
+ * @author Joyce Gill
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AssociativeArrayBenchmark {
+  @Param({"10", "1000", "100000", "1000000"})
+  int size;
+
+  String[] keys;
+  String[] misses;
+  AssociativeArray<String, String> arr;
+  HashMap<String, String> map;
+  int next;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    this.keys = new String[this.size];
+    this.misses = new String[this.size];
+    this.arr = new AssociativeArray<String, String>();
+    this.map = new HashMap<String, String>();
+    for (int i = 0; i < this.size; i++) {
+      this.keys[i] = "img/category/item" + i + ".png";
+      this.misses[i] = "img/missing/item" + i + ".png";
+      this.arr.set(this.keys[i], "item " + i);
+      this.map.put(this.keys[i], "item " + i);
+    } // for
+  } // setUp()
+
+  /**
+   * The next key to use, walking the keys in a scrambled order.
+   */
+  int step() {
+    this.next = (this.next + 7919) % this.size;
+    return this.next;
+  } // step()
+
+  @Benchmark
+  public String arrGet() throws KeyNotFoundException {
+    return this.arr.get(this.keys[step()]);
+  } // arrGet()
+
+  @Benchmark
+  public String mapGet() {
+    return this.map.get(this.keys[step()]);
+  } // mapGet()
+
+  @Benchmark
+  public void arrSet() {
+    int i = step();
+    this.arr.set(this.keys[i], this.keys[i]);
+  } // arrSet()
+
+  @Benchmark
+  public String mapSet() {
+    int i = step();
+    return this.map.put(this.keys[i], this.keys[i]);
+  } // mapSet()
+
+  @Benchmark
+  public boolean arrHasKeyMiss() {
+    return this.arr.hasKey(this.misses[step()]);
+  } // arrHasKeyMiss()
+
+  @Benchmark
+  public boolean mapHasKeyMiss() {
+    return this.map.containsKey(this.misses[step()]);
+  } // mapHasKeyMiss()
+
+  @Benchmark
+  public void arrRemoveAndSet() {
+    int i = step();
+    this.arr.remove(this.keys[i]);
+    this.arr.set(this.keys[i], this.keys[i]);
+  } // arrRemoveAndSet()
+
+  @Benchmark
+  public String mapRemoveAndSet() {
+    int i = step();
+    this.map.remove(this.keys[i]);
+    return this.map.put(this.keys[i], this.keys[i]);
+  } // mapRemoveAndSet()
+
+  @Benchmark
+  public String[] arrGetKeys() {
+    return this.arr.getKeys();
+  } // arrGetKeys()
+
+  @Benchmark
+  public void arrIterateKeys(Blackhole hole) {
+    for (String key : this.arr.keys()) {
+      hole.consume(key);
+    } // for
+  } // arrIterateKeys(Blackhole)
+
+  @Benchmark
+  public void mapIterateKeys(Blackhole hole) {
+    for (String key : this.map.keySet()) {
+      hole.consume(key);
+    } // for
+  } // mapIterateKeys(Blackhole)
+
+  @Benchmark
+  public AssociativeArray<String, String> arrClone() {
+    return this.arr.clone();
+  } // arrClone()
+
+  /**
+   * A clone followed by one write, which pays for the copy-on-write.
+   */
+  @Benchmark
+  public AssociativeArray<String, String> arrCloneAndSet() {
+    AssociativeArray<String, String> copy = this.arr.clone();
+    copy.set(this.keys[0], "changed");
+    return copy;
+  } // arrCloneAndSet()
+
+  @Benchmark
+  public Map<String, String> mapClone() {
+    return new HashMap<String, String>(this.map);
+  } // mapClone()
+} // class AssociativeArrayBenchmark
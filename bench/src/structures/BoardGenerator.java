@@ -0,0 +1,54 @@
+package structures;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes synthetic boards in the AACMappings text format for the
+ * benchmarks: top-level categories, each followed by its items.
+ *
+ * @author Joyce Gill
+ */
+public class BoardGenerator {
+  /**
+   * The number of items in each generated category.
+   */
+  public static final int ITEMS_PER_CATEGORY = 49;
+
+  /**
+   * Write a board of about lines lines to a new temporary file.
+   */
+  public static Path write(int lines) throws IOException {
+    Path file = Files.createTempFile("board-" + lines + "-", ".txt");
+    file.toFile().deleteOnExit();
+    try (PrintWriter pen = new PrintWriter(Files.newBufferedWriter(file))) {
+      int written = 0;
+      for (int c = 0; written < lines; c++) {
+        pen.println(categoryLoc(c) + " category " + c);
+        written++;
+        for (int i = 0; i < ITEMS_PER_CATEGORY && written < lines; i++) {
+          pen.println(">" + itemLoc(c, i) + " item " + i + " of " + c);
+          written++;
+        } // for
+      } // for
+    } // try
+    return file;
+  } // write(int)
+
+  /**
+   * The number of categories in a board of the given number of lines.
+   */
+  public static int categories(int lines) {
+    return (lines + ITEMS_PER_CATEGORY) / (ITEMS_PER_CATEGORY + 1);
+  } // categories(int)
+
+  public static String categoryLoc(int c) {
+    return "img/category" + c + "/icon.png";
+  } // categoryLoc(int)
+
+  public static String itemLoc(int c, int i) {
+    return "img/category" + c + "/item" + i + ".png";
+  } // itemLoc(int, int)
+} // class BoardGenerator
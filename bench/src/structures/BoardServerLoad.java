@@ -0,0 +1,180 @@
+package structures;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A load test for BoardServer. Each simulated user opens a session and
+ * then, until time is up, lists the top level, opens a category, lists
+ * it, taps three of its items and goes home, as NavigationBenchmark does
+ * in process. Requests are sent asynchronously, so a few client threads
+ * keep every session busy at once. It prints the request rate, the
+ * latency percentiles and the number of errors.
+ *
+ * Without a URL it serves a generated board of lines lines from a
+ * BoardServer of its own.
+ *
+ * Usage: java structures.BoardServerLoad [sessions] [seconds] [lines | url board]
+ *
+ * @author Joyce Gill
+ */
+public class BoardServerLoad {
+  static final Pattern IMAGE = Pattern.compile("\"([^\"]*)\"");
+  static final Pattern SESSION = Pattern.compile("\"session\":\"([^\"]*)\"");
+
+  final HttpClient client;
+  final String base;
+  final String board;
+  final long deadline;
+  final Histogram latency = new Histogram("BoardServerLoad.request", "ns");
+  final LongAdder errors = new LongAdder();
+
+  BoardServerLoad(HttpClient client, String base, String board, long deadline) {
+    this.client = client;
+    this.base = base;
+    this.board = board;
+    this.deadline = deadline;
+  } // BoardServerLoad(HttpClient, String, String, long)
+
+  public static void main(String[] args) throws Exception {
+    int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+    int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+    BoardServer server = null;
+    Path dir = null;
+    String base;
+    String board;
+    if (args.length > 3) {
+      base = args[2];
+      board = args[3];
+    } else {
+      int lines = args.length > 2 ? Integer.parseInt(args[2]) : 10000;
+      dir = Files.createTempDirectory("boards");
+      Files.move(BoardGenerator.write(lines), dir.resolve("board.txt"));
+      server = new BoardServer(dir, 0);
+      base = "http://localhost:" + server.port();
+      board = "board.txt";
+      System.out.println("Serving a board of " + lines + " lines: " + server);
+    } // if/else
+
+    ExecutorService threads = Executors.newFixedThreadPool(
+        Math.max(2, Runtime.getRuntime().availableProcessors()));
+    HttpClient client = HttpClient.newBuilder().executor(threads)
+        .version(HttpClient.Version.HTTP_1_1).build();
+    BoardServerLoad load = new BoardServerLoad(client, base, board,
+        System.nanoTime() + seconds * 1000000000L);
+    long start = System.nanoTime();
+    List<CompletableFuture<Void>> users = new ArrayList<CompletableFuture<Void>>();
+    for (int i = 0; i < sessions; i++) {
+      users.add(load.user());
+    } // for
+    CompletableFuture.allOf(users.toArray(new CompletableFuture<?>[0])).join();
+    double elapsed = (System.nanoTime() - start) / 1e9;
+
+    System.out.printf("%d sessions, %d requests in %.1f s: %.0f requests/s, %d errors%n",
+        sessions, load.latency.getCount(), elapsed, load.latency.getCount() / elapsed,
+        load.errors.sum());
+    System.out.println(load.latency);
+    if (server != null) {
+      System.out.println("Server: " + server);
+      server.close();
+      Files.deleteIfExists(dir.resolve(board));
+      Files.deleteIfExists(dir);
+    } // if
+    threads.shutdownNow();
+  } // main(String[])
+
+  /**
+   * One user: open a session, then go round until the deadline, then close
+   * it.
+   */
+  CompletableFuture<Void> user() {
+    return this.get("/open?board=" + encode(this.board)).thenCompose(body -> {
+      Matcher session = SESSION.matcher(body);
+      if (!session.find()) {
+        this.errors.increment();
+        return CompletableFuture.completedFuture(null);
+      } // if
+      String id = session.group(1);
+      return this.round(id).thenCompose(done -> this.get("/close?session=" + id))
+          .thenApply(body2 -> null);
+    });
+  } // user()
+
+  /**
+   * Rounds of top level, category, three items and home, until the
+   * deadline.
+   */
+  CompletableFuture<Void> round(String id) {
+    if (System.nanoTime() > this.deadline) {
+      return CompletableFuture.completedFuture(null);
+    } // if
+    String session = "?session=" + id;
+    return this.get("/images" + session)
+        .thenCompose(top -> this.get("/tap" + session + "&image="
+            + encode(pick(top))))
+        .thenCompose(tapped -> this.get("/images" + session))
+        .thenCompose(items -> {
+          CompletableFuture<String> taps = CompletableFuture.completedFuture(items);
+          for (int i = 0; i < 3; i++) {
+            taps = taps.thenCompose(body -> this.get("/tap" + session + "&image="
+                + encode(pick(items))));
+          } // for
+          return taps;
+        })
+        .thenCompose(tapped -> this.get("/home" + session))
+        .thenCompose(home -> this.round(id));
+  } // round(String)
+
+  /**
+   * Send a request, timing it, and return its body, or "" if it failed.
+   */
+  CompletableFuture<String> get(String path) {
+    long start = System.nanoTime();
+    HttpRequest request = HttpRequest.newBuilder(URI.create(this.base + path)).build();
+    return this.client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+        .handle((response, failure) -> {
+          this.latency.recordSince(start);
+          if (failure != null || response.statusCode() != 200) {
+            this.errors.increment();
+            return "";
+          } // if
+          return response.body();
+        });
+  } // get(String)
+
+  /**
+   * A random image from the list in a /images answer, or "" if it has none.
+   */
+  static String pick(String body) {
+    int from = body.indexOf('[');
+    if (from < 0) {
+      return "";
+    } // if
+    ArrayList<String> images = new ArrayList<String>();
+    Matcher image = IMAGE.matcher(body);
+    image.region(from, body.length());
+    while (image.find()) {
+      images.add(image.group(1));
+    } // while
+    return images.isEmpty() ? "" : images.get(ThreadLocalRandom.current().nextInt(images.size()));
+  } // pick(String)
+
+  static String encode(String text) {
+    return URLEncoder.encode(text, StandardCharsets.UTF_8);
+  } // encode(String)
+} // class BoardServerLoad
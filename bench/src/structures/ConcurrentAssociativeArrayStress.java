@@ -0,0 +1,129 @@
+package structures;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A stress test for ConcurrentAssociativeArray. One writer keeps changing
+ * the array while a growing number of readers look keys up and iterate it.
+ * For each reader count it prints the total read throughput, and it checks
+ * that no reader ever sees a torn snapshot.
+ *
+ * Usage: java structures.ConcurrentAssociativeArrayStress [size] [millis] [maxReaders]
+ *
+ * @author Joyce Gill
+ */
+public class ConcurrentAssociativeArrayStress {
+  public static void main(String[] args) throws Exception {
+    int size = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+    long millis = args.length > 1 ? Long.parseLong(args[1]) : 1000;
+    int maxReaders = args.length > 2 ? Integer.parseInt(args[2])
+        : Runtime.getRuntime().availableProcessors();
+
+    // Every value is its key times the generation that wrote it
+    ConcurrentAssociativeArray<Integer, Long> arr = new ConcurrentAssociativeArray<Integer, Long>();
+    Integer[] keys = new Integer[size];
+    Long[] values = new Long[size];
+    for (int i = 0; i < size; i++) {
+      keys[i] = i;
+      values[i] = (long) i;
+    } // for
+    arr.setAll(keys, values);
+
+    System.out.println("readers\treads/s\tspeedup\twrites");
+    double base = 0;
+    for (int readers = 1; readers <= maxReaders; readers *= 2) {
+      Result result = run(arr, size, millis, readers);
+      double rate = result.reads * 1000.0 / millis;
+      if (base == 0) {
+        base = rate;
+      } // if
+      System.out.printf("%d\t%.0f\t%.2f\t%d%n", readers, rate, rate / base, result.writes);
+    } // for
+  } // main(String[])
+
+  static class Result {
+    long reads;
+    long writes;
+  } // class Result
+
+  static Result run(ConcurrentAssociativeArray<Integer, Long> arr, int size, long millis,
+      int readers) throws InterruptedException {
+    AtomicBoolean done = new AtomicBoolean(false);
+    AtomicLong reads = new AtomicLong();
+    AtomicLong writes = new AtomicLong();
+    CountDownLatch finished = new CountDownLatch(readers + 1);
+    Throwable[] failure = new Throwable[1];
+
+    Thread writer = new Thread(() -> {
+      try {
+        long generation = 1;
+        while (!done.get()) {
+          int key = ThreadLocalRandom.current().nextInt(size);
+          // Move a key to the end and back, changing its value
+          arr.remove(key);
+          arr.set(key, key * generation++);
+          writes.incrementAndGet();
+        } // while
+      } catch (Throwable t) {
+        failure[0] = t;
+      } finally {
+        finished.countDown();
+      } // try/catch/finally
+    });
+    writer.start();
+
+    for (int r = 0; r < readers; r++) {
+      new Thread(() -> {
+        long count = 0;
+        try {
+          ThreadLocalRandom random = ThreadLocalRandom.current();
+          while (!done.get()) {
+            for (int i = 0; i < 1000; i++) {
+              int key = random.nextInt(size);
+              Long value = arr.getOrDefault(key, null);
+              // A key is missing only between the writer's remove and set
+              if (value != null && key != 0 && value % key != 0) {
+                throw new AssertionError("torn value " + value + " for " + key);
+              } // if
+            } // for
+            count += 1000;
+            // Now and then walk a whole snapshot
+            if (random.nextInt(100) == 0) {
+              int seen = 0;
+              for (Map.Entry<Integer, Long> pair : arr.entries()) {
+                if (pair.getKey() == null) {
+                  throw new AssertionError("hole in snapshot");
+                } // if
+                seen++;
+              } // for
+              if (seen < size - 1) {
+                throw new AssertionError("snapshot of " + seen + " pairs");
+              } // if
+            } // if
+          } // while
+        } catch (Throwable t) {
+          failure[0] = t;
+        } finally {
+          reads.addAndGet(count);
+          finished.countDown();
+        } // try/catch/finally
+      }).start();
+    } // for
+
+    Thread.sleep(millis);
+    done.set(true);
+    finished.await();
+    if (failure[0] != null) {
+      throw new IllegalStateException("stress test failed", failure[0]);
+    } // if
+
+    Result result = new Result();
+    result.reads = reads.get();
+    result.writes = writes.get();
+    return result;
+  } // run(ConcurrentAssociativeArray, int, long, int)
+} // class ConcurrentAssociativeArrayStress
@@ -0,0 +1,69 @@
+package structures;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The model side of a user session: open a category, list its images, and
+ * speak a few of its items, the way AAC.actionPerformed drives AACMappings.
+ *
+ * @author Joyce Gill
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NavigationBenchmark {
+  @Param({"1000", "100000"})
+  int lines;
+
+  AACMappings mappings;
+  int categories;
+  int next;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    Path board = BoardGenerator.write(this.lines);
+    this.mappings = new AACMappings(board.toString());
+    this.categories = BoardGenerator.categories(this.lines);
+    Files.deleteIfExists(board);
+  } // setUp()
+
+  /**
+   * Open a category and speak three of its items.
+   */
+  @Benchmark
+  public void openAndSpeak(Blackhole hole) throws Exception {
+    this.next = (this.next + 31) % this.categories;
+    hole.consume(this.mappings.getText(BoardGenerator.categoryLoc(this.next)));
+    hole.consume(this.mappings.getImageLocs());
+    for (int i = 0; i < 3; i++) {
+      hole.consume(this.mappings.getText(BoardGenerator.itemLoc(this.next, i * 7)));
+    } // for
+  } // openAndSpeak(Blackhole)
+
+  /**
+   * List the images of the current screen, as every screen change does.
+   */
+  @Benchmark
+  public String[] getImageLocs() throws Exception {
+    return this.mappings.getImageLocs();
+  } // getImageLocs()
+} // class NavigationBenchmark
@@ -3,19 +3,44 @@ import javax.swing.JLabel;
 import javax.swing.JPanel;
 
 import structures.AACMappings;
+import structures.AudioCache;
+import structures.BoardWatcher;
+import structures.IconCache;
+import structures.SpeechQueue;
+import structures.StartupLog;
+import structures.SymbolTable;
+import structures.Metrics;
 
-import javax.swing.ImageIcon;
 import javax.swing.JButton; 
+import javax.swing.JTextField;
+import javax.swing.JToggleButton;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 
 import java.awt.BorderLayout;
 import java.awt.Container;
 import java.awt.Dimension;
+import java.awt.EventQueue;
+import java.awt.FlowLayout;
 import java.awt.GridLayout; 
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.nio.file.Paths;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.sun.speech.freetts.Voice;
+import com.sun.speech.freetts.VoiceManager;
 
 import javax.speech.Central;
 import javax.speech.synthesis.Synthesizer;
@@ -35,8 +60,56 @@ public class AAC implements ActionListener {
 	private static Synthesizer synthesizer;
 	private int startIndex;
 	private int endIndex;
-	private static final int NUM_ACROSS = 3;
-	private static final int NUM_DOWN = 3;
+	// The size of the grid, which large screens may raise with -Daac.across and -Daac.down
+	private static final int NUM_ACROSS = Integer.getInteger("aac.across", 3);
+	private static final int NUM_DOWN = Integer.getInteger("aac.down", 3);
+	// The largest an image is shown, in pixels
+	private static final int ICON_SIZE = 96;
+	private final IconCache icons = new IconCache();
+	// Looks ahead at what the next tap may show, off the event thread, since
+	// that may mean reading categories from disk; only the latest look-ahead
+	// is worth finishing
+	private final ExecutorService lookahead = Executors.newSingleThreadExecutor(task -> {
+		Thread thread = new Thread(task, "lookahead");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		return thread;
+	});
+	private Future<?> lookingAhead;
+	// The buttons that are reused for every page
+	private JButton[] cells;
+	private JButton backArrow;
+	private JButton nextArrow;
+	// Speaks off the event thread; at most this many utterances wait, which
+	// bounds the longest phrase
+	private static final int SPEECH_QUEUE = 32;
+	private SpeechQueue speech;
+	// The voice whose audio is rendered ahead of time, how many bytes of it stay
+	// in memory, and where the rest goes
+	private static final String VOICE = "kevin16";
+	private static final long AUDIO_BUDGET = Long.getLong("aac.audioBudget", 16L << 20);
+	private static final String AUDIO_DIR = System.getProperty("aac.audioDir", "audio-cache");
+	private volatile AudioCache audio;
+	// In phrase mode, tapped items build up in a sentence strip, and each is
+	// queued behind the last instead of cutting it off
+	private boolean phraseMode;
+	private final List<String> phrase = new ArrayList<String>();
+	private JPanel phraseBar;
+	private JPanel strip;
+	// The search box, and what it found (image to text), or null when it is empty;
+	// at most this many pages of results are shown
+	private static final int SEARCH_PAGES = 3;
+	private JTextField searchField;
+	private Map<String,String> found;
+	// Said silently at startup to warm up the voice
+	private static final String WARM_UP = "Hello, I am ready to talk.";
+	// The toolbar icons, which are decoded while the board is read
+	private static final String[] TOOLBAR = { "img/home.png", "img/save.png",
+			"img/plus.png", "img/back-to.png", "img/next.png" };
+	// Whether each category shows the images tapped most, lately and after the
+	// last tap, on its first page; -Daac.likelyFirst=false keeps the board's order
+	private static final boolean LIKELY_FIRST =
+			Boolean.parseBoolean(System.getProperty("aac.likelyFirst", "true"));
 	private String[] images;
 	private AACMappings aacMappings;
 	private Scanner input;
@@ -49,82 +122,212 @@ public class AAC implements ActionListener {
 	 * @throws Exception
 	 */
 	public AAC(String filename) throws Exception{ 
-		this.aacMappings = new AACMappings(filename);
+		this(filename, new StartupLog());
+	}
+
+	/**
+	 * Creates the AAC display for the file provided. The voice loads in the
+	 * background while the board is read and the screen is drawn, and the
+	 * icons are decoded alongside both; each phase is timed in startup
+	 * @param filename the name of the file that contains the 
+	 * images and text that will be in the AAC
+	 * @param startup the log of the startup phases
+	 * @throws Exception
+	 */
+	private AAC(String filename, StartupLog startup) throws Exception{ 
+		CompletableFuture<SpeechQueue.Speaker> voice = loadVoice(startup);
+		this.speech = new SpeechQueue(SpeechQueue.whenReady(voice), SPEECH_QUEUE,
+				SpeechQueue.defaultPolicy(), this::speechEvent, EventQueue::invokeLater);
+		long iconPhase = startup.begin();
+		icons.prefetch(Arrays.asList(TOOLBAR), 0);
+
+		long phase = startup.begin();
+		// Concurrent, since the look-ahead reads the board off the event thread
+		this.aacMappings = new AACMappings(filename, true);
+		startup.phase("board", phase);
+		if (Metrics.ENABLED) {
+			System.out.println("symbols: " + SymbolTable.SHARED);
+		}
+		phase = startup.begin();
+		// Each add is journaled as it is made, so nothing is lost on exit
+		this.aacMappings.openJournal();
+		this.aacMappings.openUsage(LIKELY_FIRST);
+		// So that the first search does not wait for the index
+		this.aacMappings.indexLater();
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			try {
+				this.aacMappings.close();
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}));
+		// Edits to the board show up without a restart
+		this.aacMappings.watch(EventQueue::invokeLater, this::boardChanged);
+		startup.phase("journal", phase);
 		this.images = this.aacMappings.getImageLocs();
 		this.startIndex = 0;
 		this.endIndex = Math.min(NUM_ACROSS*NUM_DOWN, this.images.length);
+		icons.prefetch(Arrays.asList(this.images).subList(0, this.endIndex), ICON_SIZE).get();
+		startup.phase("icons", iconPhase);
+
+		phase = startup.begin();
 		frame=new JFrame();
+		frame.setTitle(voice.isDone() ? "" : "Loading voice...");
 		frame.setPreferredSize(new Dimension(500,500));
 		loadImages(NUM_ACROSS,NUM_DOWN);
 		frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 		frame.pack(); 
 		frame.setVisible(true);
 		input = new Scanner(System.in);
+		startup.phase("window", phase);
+
+		// Tell the user when taps will be spoken
+		voice.whenComplete((speaker, failure) -> EventQueue.invokeLater(() -> {
+			frame.setTitle(failure == null ? "" : "Voice unavailable");
+			System.out.println("startup: ready in " + startup.elapsed() + " ms");
+		}));
 	}
 
 	/**
-	 * Loads the images in the screen in a width by length grid
+	 * Loads the images in the screen in a width by length grid. The buttons
+	 * are made the first time and reused after that: each cell only has its
+	 * icon and action command swapped, and only if its image changed
 	 * @param width the number of images across to display
 	 * @param length the number of images down to display
 	 */
 	public void loadImages(int width, int length) {
 		Container pane = frame.getContentPane();
+		if(this.cells == null || this.cells.length != width*length) {
+			buildScreen(pane, width, length);
+		}
+
+		//show the images of this page, leaving the rest of the cells empty
+		int currImage = startIndex;
+		for(int i = 0; i < this.cells.length; i++, currImage++) {
+			JButton cell = this.cells[i];
+			if(currImage < this.images.length) {
+				String image = this.images[currImage];
+				if(!image.equals(cell.getActionCommand())) {
+					cell.setIcon(icons.get(image, ICON_SIZE));
+					cell.setActionCommand(image);
+				}
+				cell.setVisible(true);
+			}
+			else {
+				cell.setActionCommand("");
+				cell.setIcon(null);
+				cell.setVisible(false);
+			}
+		}
+
+		//if on page 2+, show back button; if have later pages, show next button
+		boolean showBack = startIndex > 0;
+		boolean showNext = endIndex < images.length;
+		if(showBack != this.backArrow.isVisible() || showNext != this.nextArrow.isVisible()) {
+			this.backArrow.setVisible(showBack);
+			this.nextArrow.setVisible(showNext);
+			pane.revalidate();
+		}
+		prefetch();
+	}
+
+	/**
+	 * Builds the parts of the screen that stay put: the home, save and add
+	 * buttons, the back and next arrows, and a width by length grid of
+	 * buttons for the images
+	 * @param pane the content pane of the frame
+	 * @param width the number of images across to display
+	 * @param length the number of images down to display
+	 */
+	private void buildScreen(Container pane, int width, int length) {
 		pane.removeAll();
 
 		//add options to go to home screen
 		JPanel panel1 = new JPanel();
-		panel1.setLayout(new GridLayout(1,3));
+		panel1.setLayout(new GridLayout(1,4));
 
-		JButton home = new JButton(new ImageIcon("img/home.png"));
+		JButton home = new JButton(icons.get("img/home.png", 0));
 		home.setActionCommand("");
 		home.addActionListener(this);
 		panel1.add(home);
-		JButton save = new JButton(new ImageIcon("img/save.png"));
+		JButton save = new JButton(icons.get("img/save.png", 0));
 		save.setActionCommand("save");
 		save.addActionListener(this);
 		panel1.add(save);
-		JButton add = new JButton(new ImageIcon("img/plus.png"));
+		JButton add = new JButton(icons.get("img/plus.png", 0));
 		add.setActionCommand("add");
 		add.addActionListener(this);
 		panel1.add(add);
+		JToggleButton phraseButton = new JToggleButton("Phrase", this.phraseMode);
+		phraseButton.setActionCommand("phrase");
+		phraseButton.addActionListener(this);
+		panel1.add(phraseButton);
 
-		pane.add(panel1, BorderLayout.PAGE_START);
+		//add the sentence strip, shown only in phrase mode
+		this.phraseBar = new JPanel(new BorderLayout());
+		this.strip = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		this.phraseBar.add(this.strip, BorderLayout.CENTER);
+		JPanel phraseButtons = new JPanel(new GridLayout(1,2));
+		JButton speakPhrase = new JButton("Speak");
+		speakPhrase.setActionCommand("speak-phrase");
+		speakPhrase.addActionListener(this);
+		phraseButtons.add(speakPhrase);
+		JButton clearPhrase = new JButton("Clear");
+		clearPhrase.setActionCommand("clear-phrase");
+		clearPhrase.addActionListener(this);
+		phraseButtons.add(clearPhrase);
+		this.phraseBar.add(phraseButtons, BorderLayout.LINE_END);
+		this.phraseBar.setVisible(this.phraseMode);
+		showPhrase();
 
+		//add the search box, which finds items in every category as it is typed in
+		JPanel searchBar = new JPanel(new BorderLayout());
+		searchBar.add(new JLabel("Find: "), BorderLayout.LINE_START);
+		this.searchField = new JTextField();
+		this.searchField.getDocument().addDocumentListener(new DocumentListener() {
+			public void insertUpdate(DocumentEvent e) {
+				searchChanged();
+			}
+			public void removeUpdate(DocumentEvent e) {
+				searchChanged();
+			}
+			public void changedUpdate(DocumentEvent e) {
+				searchChanged();
+			}
+		});
+		searchBar.add(this.searchField, BorderLayout.CENTER);
 
-		//if on page 2+, add back button
-		if(startIndex > 0) {
-			JButton backArrow = new JButton(new ImageIcon("img/back-to.png"));
-			backArrow.setActionCommand("back");
-			backArrow.addActionListener(this);
-			pane.add(backArrow, BorderLayout.LINE_START);
-		}
+		JPanel top = new JPanel(new BorderLayout());
+		top.add(panel1, BorderLayout.PAGE_START);
+		top.add(searchBar, BorderLayout.CENTER);
+		top.add(this.phraseBar, BorderLayout.PAGE_END);
+		pane.add(top, BorderLayout.PAGE_START);
+
+		this.backArrow = new JButton(icons.get("img/back-to.png", 0));
+		this.backArrow.setActionCommand("back");
+		this.backArrow.addActionListener(this);
+		this.backArrow.setVisible(false);
+		pane.add(this.backArrow, BorderLayout.LINE_START);
 
-		//add images
+		//add the cells for the images
 		JPanel panel = new JPanel();
 		panel.setLayout(new GridLayout(width,length)); 
-		int currImage = startIndex;
-		for(int y=0; y<length; y++){
-			for(int x=0; x<width; x++){
-				if(currImage < this.images.length) {
-					ImageIcon img = new ImageIcon(images[currImage]);
-					JButton button = new JButton(img);
-					button.setActionCommand(images[currImage]);
-					button.addActionListener(this);
-					panel.add(button); 
-					currImage++;
-
-				}
-			}
+		this.cells = new JButton[width*length];
+		for(int i = 0; i < this.cells.length; i++) {
+			JButton button = new JButton();
+			button.setActionCommand("");
+			button.addActionListener(this);
+			button.setVisible(false);
+			this.cells[i] = button;
+			panel.add(button);
 		}
 		pane.add(panel,BorderLayout.CENTER);
 
-		//if have later pages, add next button
-		if(endIndex < images.length) {
-			JButton nextArrow = new JButton(new ImageIcon("img/next.png"));
-			nextArrow.setActionCommand("next");
-			nextArrow.addActionListener(this);
-			pane.add(nextArrow,BorderLayout.LINE_END);
-		}
+		this.nextArrow = new JButton(icons.get("img/next.png", 0));
+		this.nextArrow.setActionCommand("next");
+		this.nextArrow.addActionListener(this);
+		this.nextArrow.setVisible(false);
+		pane.add(this.nextArrow,BorderLayout.LINE_END);
 
 		JLabel ack = new JLabel("All provided icons are from icons8: icons8.com");
 		pane.add(ack,BorderLayout.PAGE_END);
@@ -132,31 +335,244 @@ public class AAC implements ActionListener {
 		pane.requestFocusInWindow();
 	}
 
+	/**
+	 * Loads the icons that the next tap is likely to show in the background:
+	 * those of the next page and, at the top level, those of the categories
+	 * on this page. The pages are taken in the order they are shown, which
+	 * puts the likeliest images first, and categories that are not loaded
+	 * are read without being kept
+	 */
+	private void prefetch() {
+		int page = NUM_ACROSS*NUM_DOWN;
+		List<String> next = new ArrayList<String>(Arrays.asList(this.images)
+				.subList(endIndex, Math.min(endIndex + page, this.images.length)));
+		List<String> onPage = new ArrayList<String>(Arrays.asList(this.images)
+				.subList(startIndex, Math.min(endIndex + page, this.images.length)));
+		int shown = endIndex - startIndex;
+		String categoryLoc = this.aacMappings.getCurrentCategoryLoc();
+		if(this.lookingAhead != null) {
+			this.lookingAhead.cancel(false);
+		}
+		this.lookingAhead = this.lookahead.submit(() -> {
+			List<String> texts = new ArrayList<String>();
+			if(categoryLoc.equals("")) {
+				//the first page of each category on this page, and what it says
+				for(String image : onPage.subList(0, shown)) {
+					for(Map.Entry<String,String> item : this.aacMappings.firstItemsOf(image, page)) {
+						next.add(item.getKey());
+						texts.add(item.getValue());
+					}
+				}
+			}
+			else {
+				//what this page and the next say
+				for(String image : onPage) {
+					String text = this.aacMappings.getText(categoryLoc, image);
+					if(text != null) {
+						texts.add(text);
+					}
+				}
+			}
+			icons.prefetch(next, ICON_SIZE);
+			if(this.audio != null) {
+				this.audio.prerender(texts);
+			}
+		});
+	}
+
 	public static void main(String[] args) throws Exception {
+		// The voice loads in the background, so the board shows first
+		// A board compiled with structures.BoardCompiler also works here
+		AAC aac = new AAC(args.length > 0 ? args[0] : "AACMappings.txt");
+	}
 
+	/**
+	 * Redraws the grid after the board was edited, if what is on it changed,
+	 * staying on the same page where possible
+	 * @param diff the changes that were applied to the board
+	 */
+	private void boardChanged(BoardWatcher.Diff diff) {
+		System.out.println("Board changed: "+diff);
+		if(!diff.affectsCurrent()) {
+			return;
+		}
 		try {
-			// Set property as Kevin Dictionary
-			System.setProperty("freetts.voices","com.sun.speech.freetts.en.us"
-					+ ".cmu_us_kal.KevinVoiceDirectory");
+			this.images = this.aacMappings.getImageLocs();
+		} catch (Exception e1) {
+			e1.printStackTrace();
+		}
+		int page = NUM_ACROSS*NUM_DOWN;
+		if(this.startIndex >= this.images.length) {
+			this.startIndex = Math.max(0, (this.images.length - 1) / page * page);
+		}
+		this.endIndex = Math.min(this.startIndex + page, this.images.length);
+		loadImages(NUM_ACROSS,NUM_DOWN);
+	}
+
+	/**
+	 * Starts loading the voice on a thread of its own
+	 * @param startup the log of the startup phases
+	 * @return the speaker, once it has loaded
+	 */
+	private CompletableFuture<SpeechQueue.Speaker> loadVoice(StartupLog startup) {
+		CompletableFuture<SpeechQueue.Speaker> ready = new CompletableFuture<SpeechQueue.Speaker>();
+		Thread loader = new Thread(() -> {
+			try {
+				ready.complete(createSpeaker(startup));
+			}
+			// VoiceManager reports a missing voice jar with an Error
+			catch (Exception | Error e) {
+				e.printStackTrace();
+				ready.completeExceptionally(e);
+			}
+		}, "voice-loader");
+		loader.setDaemon(true);
+		loader.start();
+		return ready;
+	}
 
-			// Register Engine
-			Central.registerEngineCentral("com.sun.speech.freetts"
-					+ ".jsapi.FreeTTSEngineCentral");
-			synthesizer
-			= Central.createSynthesizer(
-					new SynthesizerModeDesc(Locale.US));
+	/**
+	 * Loads the voice and says something silently, so that the lexicon is
+	 * loaded and the synthesis code compiled before the first tap. The
+	 * pre-rendered audio cache is used when its voice is available and the
+	 * JSAPI synthesizer otherwise
+	 * @param startup the log of the startup phases
+	 * @return what speaks
+	 * @throws Exception if neither can be loaded
+	 */
+	private SpeechQueue.Speaker createSpeaker(StartupLog startup) throws Exception {
+		// Set property as Kevin Dictionary
+		System.setProperty("freetts.voices","com.sun.speech.freetts.en.us"
+				+ ".cmu_us_kal.KevinVoiceDirectory");
+
+		long phase = startup.begin();
+		AudioCache cache = createAudioCache();
+		if(cache != null) {
+			startup.phase("voice", phase);
+			phase = startup.begin();
+			cache.warmUp(WARM_UP);
+			startup.phase("warm-up", phase);
+			this.audio = cache;
+			return cache;
+		}
 
-			// Allocate synthesizer
-			synthesizer.allocate();
+		// Register Engine
+		Central.registerEngineCentral("com.sun.speech.freetts"
+				+ ".jsapi.FreeTTSEngineCentral");
+		synthesizer
+		= Central.createSynthesizer(
+				new SynthesizerModeDesc(Locale.US));
 
-			// Resume Synthesizer
-			synthesizer.resume();
+		// Allocate synthesizer
+		synthesizer.allocate();
 
+		// Resume Synthesizer
+		synthesizer.resume();
+		startup.phase("synthesizer", phase);
+		return SpeechQueue.speaker(synthesizer);
+	}
+
+	/**
+	 * Creates the cache of pre-rendered audio, or returns null if the voice
+	 * is not available, in which case the synthesizer speaks instead
+	 * @return the audio cache, or null
+	 */
+	private static AudioCache createAudioCache() {
+		try {
+			Voice voice = VoiceManager.getInstance().getVoice(VOICE);
+			if(voice == null) {
+				return null;
+			}
+			voice.allocate();
+			return new AudioCache(voice, AUDIO_BUDGET, Paths.get(AUDIO_DIR));
 		}
-		catch (Exception e) {
+		// VoiceManager reports a missing voice jar with an Error
+		catch (Exception | Error e) {
 			e.printStackTrace();
+			return null;
 		}
-		AAC aac = new AAC("AACMappings.txt");
+	}
+
+	/**
+	 * Shows what is being said in the title bar
+	 * @param event what happened to an utterance
+	 */
+	private void speechEvent(SpeechQueue.Event event) {
+		if(event.kind == SpeechQueue.Kind.STARTED) {
+			frame.setTitle("Speaking: "+event.text);
+		}
+		else if(event.kind == SpeechQueue.Kind.FAILED) {
+			frame.setTitle("Unable to say: "+event.text);
+		}
+		else if(!this.speech.isBusy()) {
+			frame.setTitle("");
+		}
+	}
+
+	/**
+	 * Shows what the search box finds in place of the current category, or
+	 * the current category again once the box is emptied
+	 */
+	private void searchChanged() {
+		String query = this.searchField.getText();
+		if(query.trim().isEmpty()) {
+			if(this.found != null) {
+				this.found = null;
+				try {
+					this.images = this.aacMappings.getImageLocs();
+				} catch (Exception e1) {
+					e1.printStackTrace();
+				}
+				this.startIndex = 0;
+				this.endIndex = Math.min(NUM_ACROSS*NUM_DOWN, this.images.length);
+				loadImages(NUM_ACROSS,NUM_DOWN);
+			}
+			return;
+		}
+		this.found = new LinkedHashMap<String,String>();
+		for(Map.Entry<String,String> item
+				: this.aacMappings.search(query, SEARCH_PAGES*NUM_ACROSS*NUM_DOWN)) {
+			this.found.put(item.getKey(), item.getValue());
+		}
+		this.images = this.found.keySet().toArray(new String[this.found.size()]);
+		this.startIndex = 0;
+		this.endIndex = Math.min(NUM_ACROSS*NUM_DOWN, this.images.length);
+		loadImages(NUM_ACROSS,NUM_DOWN);
+	}
+
+	/**
+	 * Empties the search box without showing the current category again,
+	 * for when the caller is about to show something else
+	 */
+	private void endSearch() {
+		this.found = null;
+		this.searchField.setText("");
+	}
+
+	/**
+	 * Says text, adding it to the sentence strip in phrase mode
+	 * @param text what to say
+	 */
+	private void say(String text) {
+		System.out.println("Spoke: "+text);
+		// Spoken on the speech thread, so the screen stays responsive
+		this.speech.say(text);
+		if(this.phraseMode) {
+			this.phrase.add(text);
+			showPhrase();
+		}
+	}
+
+	/**
+	 * Shows the words of the phrase in the sentence strip
+	 */
+	private void showPhrase() {
+		this.strip.removeAll();
+		for(String word : this.phrase) {
+			this.strip.add(new JLabel(word));
+		}
+		this.strip.revalidate();
+		this.strip.repaint();
 	}
 
 	/**
@@ -165,6 +581,7 @@ public class AAC implements ActionListener {
 	 * the category, it speaks aloud the text
 	 */
 	public void actionPerformed(ActionEvent e) {
+		long tapStart = Metrics.start();
 		String actionCommand = e.getActionCommand();
 		System.out.println("Button clicked: "+actionCommand);
 		if(actionCommand.equals("back")) {
@@ -175,8 +592,29 @@ public class AAC implements ActionListener {
 			this.startIndex += NUM_ACROSS*NUM_DOWN;
 			this.endIndex = Math.min(endIndex + NUM_ACROSS*NUM_DOWN, this.images.length);
 		}
+		else if(actionCommand.equals("phrase")) {
+			// Words wait their turn in phrase mode, and are rendered while the
+			// one ahead of them plays
+			this.phraseMode = ((JToggleButton) e.getSource()).isSelected();
+			this.speech.setPolicy(this.phraseMode ? SpeechQueue.Policy.QUEUE
+					: SpeechQueue.defaultPolicy());
+			this.phraseBar.setVisible(this.phraseMode);
+		}
+		else if(actionCommand.equals("speak-phrase")) {
+			this.speech.cancelAll();
+			for(String word : this.phrase) {
+				this.speech.say(word);
+			}
+		}
+		else if(actionCommand.equals("clear-phrase")) {
+			this.speech.cancelAll();
+			this.phrase.clear();
+			showPhrase();
+		}
 		else if(actionCommand.equals("save")) {
-			this.aacMappings.writeToFile("AACMappingsNew.txt");
+			endSearch();
+			// Compacts the journal into the board in the background
+			this.aacMappings.save();
 			try {
 				this.images = this.aacMappings.getImageLocs();
 			} catch (Exception e1) {
@@ -187,10 +625,15 @@ public class AAC implements ActionListener {
 			this.endIndex = Math.min(NUM_ACROSS*NUM_DOWN, this.images.length);
 		}
 		else if(actionCommand.equals("add")) {
+			endSearch();
 			System.out.println("What is the image location");
 			String imageLoc = input.nextLine().trim();
 			System.out.println("What is the text");
 			String text = input.nextLine().trim();
+			List<String> same = this.aacMappings.imageLocsFor(text);
+			if(!same.isEmpty()) {
+				System.out.println("Note: " + same + " already say \"" + text + "\"");
+			}
 			this.aacMappings.add(imageLoc, text);
 			try {
 				this.images = this.aacMappings.getImageLocs();
@@ -202,6 +645,7 @@ public class AAC implements ActionListener {
 			this.endIndex = Math.min(NUM_ACROSS*NUM_DOWN, this.images.length);
 		}
 		else if(actionCommand.equals("")) {
+			endSearch();
 			this.aacMappings.reset();
 			try {
 				this.images = this.aacMappings.getImageLocs();
@@ -212,8 +656,26 @@ public class AAC implements ActionListener {
 			this.startIndex = 0;
 			this.endIndex = Math.min(NUM_ACROSS*NUM_DOWN, this.images.length);
 		}
+		else if(this.found != null && this.found.containsKey(actionCommand)) {
+			// A category found by the search opens; an item found in any category is
+			// said, and its category is shown
+			endSearch();
+			boolean category = this.aacMappings.isCategory(actionCommand);
+			String text = this.aacMappings.goTo(actionCommand);
+			if(!category && text != null) {
+				say(text);
+			}
+			try {
+				this.images = this.aacMappings.getImageLocs();
+			} catch (Exception e1) {
+				e1.printStackTrace();
+			}
+			this.startIndex = 0;
+			this.endIndex = Math.min(NUM_ACROSS*NUM_DOWN, this.images.length);
+		}
 		else {
 			if(this.aacMappings.getCurrentCategory().equals("")) {
+				long lookupStart = Metrics.start();
 				this.aacMappings.getText(actionCommand);
 				try {
 					this.images = this.aacMappings.getImageLocs();
@@ -221,22 +683,32 @@ public class AAC implements ActionListener {
 					// TODO Auto-generated catch block
 					e1.printStackTrace();
 				}
+				if (Metrics.ENABLED) {
+					Metrics.TAP_LOOKUP.recordSince(lookupStart);
+				}
 				this.startIndex = 0;
 				this.endIndex = Math.min(NUM_ACROSS*NUM_DOWN, this.images.length);
 			}
 			else {
 				try {
+					long lookupStart = Metrics.start();
 					String toSpeak = this.aacMappings.getText(actionCommand);
-					System.out.println("Spoke: "+toSpeak);
-					synthesizer.speakPlainText(toSpeak, null);
-					synthesizer.waitEngineState(Synthesizer.QUEUE_EMPTY);
+					if (Metrics.ENABLED) {
+						Metrics.TAP_LOOKUP.recordSince(lookupStart);
+					}
+					say(toSpeak);
 				}
 				catch (Exception e1) {
 					e1.printStackTrace();
 				}
 			}
 		}
+		long renderStart = Metrics.start();
 		loadImages(NUM_ACROSS,NUM_DOWN);
+		if (Metrics.ENABLED) {
+			Metrics.TAP_RENDER.recordSince(renderStart);
+			Metrics.TAP.recordSince(tapStart);
+		}
 
 	}
 
@@ -1,5 +1,8 @@
 package structures;
 
+import java.util.Collection;
+import java.util.Map;
+
 /*
  * Represent a single category of items in the AAC. 
  * Stores the mapping between the image location and the text
@@ -15,53 +18,77 @@ public class AACCategory
 
   /* Constructor */
   public AACCategory (String name) {
-    this.name = name;
-    this.arr = new AssociativeArray<String,String>();
+    this(name, false);
   } // AACCategory(String)
 
+  /* Constructor for a category that is safe to share between threads when concurrent is true */
+  public AACCategory (String name, boolean concurrent) {
+    this.name = name;
+    if (concurrent) {
+      this.arr = new ConcurrentAssociativeArray<String,String>();
+    } else {
+      this.arr = new AssociativeArray<String,String>();
+    } // if/else
+  } // AACCategory(String, boolean)
+
+  /* Constructor for a category backed by arr, which subclasses may fill in later */
+  AACCategory (String name, AssociativeArray<String,String> arr) {
+    this.name = name;
+    this.arr = arr;
+  } // AACCategory(String, AssociativeArray<String,String>)
+
   /* Method that adds the mapping of the imageLoc to the text to the category */
   public void addItem (String imageLoc, String text) {
     this.arr.set(imageLoc, text);
   } // addItem(String, String)
   
+  /* Method that adds a batch of mappings, making room for all of them at once */
+  public void addItems (String[] imageLocs, String[] texts) {
+    this.arr.setAll(imageLocs, texts);
+  } // addItems(String[], String[])
+
   /* Method that returns the name of the category */
   public String getCategory() {
     return this.name;
   } // getCategory()
 
   /* Method that returns the text associated with the given image loc in this category */
-  public String getText(String imageLoc) throws KeyNotFoundException {
-    try {
-      // Get text 
-      return this.arr.get(imageLoc);
-    } catch (Exception e) {
-      return "Error";
-    }
+  public String getText(String imageLoc) {
+    return this.arr.getOrDefault(imageLoc, "Error");
   } // getText(String)
 
   /* Method that determines if the provided image is stored in the category */
-  public boolean hasImage(String imageLoc) throws KeyNotFoundException {
-    try {
-      // Get image
-      return this.arr.hasKey(imageLoc);
-    } catch (Exception e) {
-      return false;
-    }
+  public boolean hasImage(String imageLoc) {
+    return this.arr.hasKey(imageLoc);
   } // hasImage(String)
 
   /* Method that returns an array of all the images in the category */
-  public String[] getImages() throws Exception {
-    if(this.arr.getKeys() == null){
-      return new String[] {""};
-    } // if
-    try {
-      // Get keys from this category
-      return this.arr.getKeys();
-    } catch (Exception e) {
-      return new String[] {"Error getting keys"};
-    } // try/catch
+  public String[] getImages() {
+    return this.arr.keys().toArray(new String[this.arr.size()]);
   } // getImages()
 
+  /* Method that returns an array of all the images in the category, likeliest to be tapped first */
+  public String[] getImages(UsageModel usage) {
+    String[] images = getImages();
+    usage.rank(images);
+    return images;
+  } // getImages(UsageModel)
+
+  /* Method that returns a live, read-only view of the images in the category */
+  public Collection<String> images() {
+    return this.arr.keys();
+  } // images()
+
+  /* Method that returns a copy of the category that later changes do not affect */
+  AACCategory snapshot() {
+    return new AACCategory(this.name, this.arr.snapshot());
+  } // snapshot()
+
+  /* Method that returns a live, read-only view of the image/text mappings in the category */
+  public Collection<Map.Entry<String,String>> items() {
+    return this.arr.entries();
+  } // items()
+
 } // class AACCategory
 
 
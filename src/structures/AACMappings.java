@@ -1,10 +1,19 @@
 package structures;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileWriter;
+import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.Scanner;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 
 /*
  * Keeps track of the complete set of AAC mappings
@@ -15,71 +24,396 @@ import java.util.Scanner;
 public class AACMappings 
 {
   /* Fields */
-  AACCategory current;
-  AACCategory topLevel;
+  volatile AACCategory current;
+  volatile AACCategory topLevel;
   AssociativeArray<String,AACCategory> arr;
 
+  /* Whether the categories are safe to share between threads */
+  final boolean concurrent;
+
+  /* The bad lines that were skipped when the file was loaded */
+  List<BoardParseException> loadErrors;
+
+  /* Where to find categories that are not in arr yet, or null */
+  CategorySource source;
+
+  /* The file the mappings were loaded from */
+  String filename;
+
+  /* The top-level image of the current category, or "" at the top level */
+  volatile String currentLoc = "";
+
+  /* The journal that records each change, or null until openJournal */
+  BoardJournal journal;
+
+  /* The watcher that applies outside edits to the board, or null until watch */
+  BoardWatcher watcher;
+
+  /* How often each image is tapped, or null until openUsage */
+  volatile UsageModel usage;
+
+  /* The last background save of the usage model, which the next one follows */
+  volatile CompletableFuture<Void> usageSaved = CompletableFuture.completedFuture(null);
+
+  /* Whether getImageLocs puts the likeliest images first */
+  volatile boolean likelyFirst;
+
+  /* The index of the words of every item, or null until it is built */
+  volatile SearchIndex index;
+
+  /* Whether the search index is rebuilt in the background whenever it is dropped */
+  volatile boolean indexEagerly;
+
+  /* Guards indexPending, placesPending and edits */
+  final Object indexLock = new Object();
+
+  /* 
+   * The changes made while the search index is being built, as described
+   * by change, to be replayed onto it before it is published; null when it
+   * is not being built
+   */
+  ArrayList<String[]> indexPending;
+
+  /* How many edits of the board have dropped the indexes, so that a build that overlaps one starts over */
+  int edits;
+
+  /* Where each image is and who says each text, or null until first asked */
+  volatile BoardIndex places;
+
+  /* The changes made while places is being built, as indexPending is for the search index */
+  ArrayList<String[]> placesPending;
+
+  /* Held while places is built, apart from the search index, which may take longer */
+  final Object placesBuild = new Object();
+
   /* Constructor */
   public AACMappings (String filename) {
-    arr = new AssociativeArray<String, AACCategory>();
-    this.topLevel = new AACCategory (""); 
+    this(filename, false);
+  } // AACMappings(String)
+
+  /* 
+   * Constructor that, when concurrent is true, keeps every category in a
+   * ConcurrentAssociativeArray so that the mappings may be read on one
+   * thread (such as the Swing event thread) while others change them.
+   * A board compiled by BoardCompiler is memory-mapped rather than read.
+   * If the aac.lazyBudget property is set, a text board is loaded lazily
+   * with that many bytes for its categories
+   */
+  public AACMappings (String filename, boolean concurrent) {
+    this(filename, concurrent, Long.getLong("aac.lazyBudget", 0L));
+  } // AACMappings(String, boolean)
+
+  /* 
+   * Constructor that, when lazyBudget is more than 0, reads only the top
+   * level of a text board and reads each category the first time it is
+   * entered, keeping about lazyBudget bytes of categories in memory
+   */
+  public AACMappings (String filename, boolean concurrent, long lazyBudget) {
+    long start = Metrics.start();
+    this.concurrent = concurrent;
+    this.filename = filename;
+    arr = newArray();
+    this.topLevel = newCategory(""); 
     this.current = topLevel;
+    this.loadErrors = new ArrayList<BoardParseException>();
+
+    Path path = Paths.get(filename);
+    if (MappedBoard.isCompiled(path)) {
+      try {
+        this.source = MappedBoard.open(path, concurrent);
+        this.topLevel = this.source.topLevel();
+        this.current = topLevel;
+      } catch (IOException e) {
+        System.err.println("Error: unable to map " + filename + ": " + e.getMessage());
+      } // try/catch
+      if (Metrics.ENABLED) {
+        Metrics.LOAD.recordSince(start);
+      } // if
+      return;
+    } // if
+
+    if (lazyBudget > 0) {
+      try {
+        this.source = LazyBoard.open(path, concurrent, lazyBudget, this.loadErrors);
+        this.topLevel = this.source.topLevel();
+        this.current = topLevel;
+      } catch (IOException e) {
+        System.err.println("Error: unable to read " + filename + ": " + e.getMessage());
+      } // try/catch
+      for (BoardParseException e : this.loadErrors) {
+        System.err.println("Error: " + e.getMessage());
+      } // for
+      if (Metrics.ENABLED) {
+        Metrics.LOAD.recordSince(start);
+      } // if
+      return;
+    } // if
 
+    Loader loader = new Loader();
+    BoardReader reader = new BoardReader();
     try {
-      // Read in file
-      Scanner sc = new Scanner(new File (filename));
-
-      // While there are elements left in to read in the file
-      while (sc.hasNextLine()) {
-        // Space used to seperate imageLoc and text in file
-        String[] strArr = sc.nextLine().split(" ", 2);
-        String imageLoc = strArr[0];
-        String text = strArr[1];
-
-        // > indicates subcategory
-        // < indicates topLevel
-        if(!imageLoc.substring(0, 1).equals(">")){
-          // Add item to topLevel 
-          topLevel.addItem(imageLoc, text);
-          arr.set(imageLoc, new AACCategory(text));
-           current = arr.get(imageLoc); 
-        } // if
-        else {
-          current.addItem(imageLoc.substring(1), text);
-        } // else
-			} // while
+      reader.read(path, loader);
+    } catch (IOException e) {
+      System.err.println("Error: unable to read " + filename + ": " + e.getMessage());
+    } catch (BoardParseException e) {
+      // Only a strict reader throws, and this one skips bad lines
+    } finally {
+      // Keep whatever was read before any error
+      loader.finish();
+    } // try/catch/finally
+    this.loadErrors = reader.errors();
+    for (BoardParseException e : this.loadErrors) {
+      System.err.println("Error: " + e.getMessage());
+    } // for
+    if (Metrics.ENABLED) {
+      Metrics.LOAD.recordSince(start);
+    } // if
+  } // AACMappings(String, boolean, long)
 
-      // Reset & close
-      current = topLevel;
-      sc.close();
+  /* Constructor for a copy of from that later changes to from do not affect */
+  AACMappings (AACMappings from) {
+    this.concurrent = from.concurrent;
+    this.filename = from.filename;
+    this.source = (from.source == null) ? null : from.source.snapshot();
+    this.loadErrors = from.loadErrors;
+    this.topLevel = from.topLevel.snapshot();
+    this.current = this.topLevel;
+    // Only the categories already fetched; the rest are still in the source
+    this.arr = new AssociativeArray<String,AACCategory>(from.arr.size());
+    for (Map.Entry<String,AACCategory> entry : from.arr.entries()) {
+      this.arr.set(entry.getKey(), entry.getValue().snapshot());
+    } // for
+  } // AACMappings(AACMappings)
 
-    } catch (Exception e) {
-        System.err.println("Error");
-    }
-  } // AACMappings(String)
+  /* Gets the bad lines that were skipped when the file was loaded */
+  public List<BoardParseException> getLoadErrors() {
+    return this.loadErrors;
+  } // getLoadErrors()
+
+  /*
+   * Collects the lines of a board file and adds them to these mappings in
+   * batches: the items of each category when the category ends, and the
+   * top-level items and their categories when the file ends
+   */
+  class Loader implements BoardReader.Handler {
+    ArrayList<String> locs = new ArrayList<String>();
+    ArrayList<String> texts = new ArrayList<String>();
+    ArrayList<String> topLocs = new ArrayList<String>();
+    ArrayList<String> topTexts = new ArrayList<String>();
+    ArrayList<AACCategory> categories = new ArrayList<AACCategory>();
+    // Items before the first category belong to the top level
+    AACCategory reading = topLevel;
+
+    public void category(String imageLoc, String text) {
+      addBatch(reading, locs, texts);
+      reading = newCategory(text);
+      topLocs.add(imageLoc);
+      topTexts.add(text);
+      categories.add(reading);
+    } // category(String, String)
 
-  /* Determines the associated text */
+    public void item(String imageLoc, String text) {
+      locs.add(imageLoc);
+      texts.add(text);
+    } // item(String, String)
+
+    void finish() {
+      addBatch(reading, locs, texts);
+      String[] keys = topLocs.toArray(new String[topLocs.size()]);
+      topLevel.addItems(keys, topTexts.toArray(new String[topTexts.size()]));
+      arr.setAll(keys, categories.toArray(new AACCategory[categories.size()]));
+    } // finish()
+  } // class Loader
+
+  /* Creates an empty category of the right kind for these mappings */
+  AACCategory newCategory(String name) {
+    return new AACCategory(name, this.concurrent);
+  } // newCategory(String)
+
+  /* Creates the map from top-level images to categories */
+  AssociativeArray<String,AACCategory> newArray() {
+    if (this.concurrent) {
+      return new ConcurrentAssociativeArray<String, AACCategory>();
+    } // if
+    return new AssociativeArray<String, AACCategory>();
+  } // newArray()
+
+  /* Adds the pending items to the category in one step and clears them */
+  static void addBatch(AACCategory category, ArrayList<String> locs, ArrayList<String> texts) {
+    if (locs.isEmpty()) {
+      return;
+    } // if
+    category.addItems(locs.toArray(new String[locs.size()]), texts.toArray(new String[texts.size()]));
+    locs.clear();
+    texts.clear();
+  } // addBatch(AACCategory, ArrayList<String>, ArrayList<String>)
+
+  /* 
+   * Finds the category behind the top-level image imageLoc, or null,
+   * fetching it from the source the first time it is asked for
+   */
+  AACCategory category(String imageLoc) {
+    AACCategory category = arr.getOrDefault(imageLoc, null);
+    if (category == null && source != null) {
+      category = source.category(imageLoc);
+      if (category != null && !source.keepsChanges()) {
+        // Keep it, so that changes made to it are not lost
+        arr.set(imageLoc, category);
+      } // if
+    } // if
+    return category;
+  } // category(String)
+
+  /* 
+   * Finds the category behind imageLoc, or null, for reading once: one that
+   * is not loaded yet is read from the source but not kept
+   */
+  AACCategory peek(String imageLoc) {
+    AACCategory category = arr.getOrDefault(imageLoc, null);
+    if (category == null && source != null) {
+      category = source.peek(imageLoc);
+    } // if
+    return category;
+  } // peek(String)
+
+  /* Determines the associated text, moving into the category if imageLoc names one */
   public String getText(String imageLoc) {
-    try {
-      current = arr.get(imageLoc);
-      return topLevel.getText(imageLoc);
-    } catch (Exception e) {
-      return "Error: Can't get category";
-    }
+    UsageModel usage = this.usage;
+    if (usage != null) {
+      usage.record(imageLoc);
+    } // if
+    AACCategory category = category(imageLoc);
+    if (category == null) {
+      // Not a category, so it is an item in the current one
+      return current.getText(imageLoc);
+    } // if
+    current = category;
+    currentLoc = imageLoc;
+    return topLevel.getText(imageLoc);
   } // getText(String)
 
-  /* Provides an array of all the images in the current category */
+  /* Determines what imageLoc says, in the first category it is in, without moving there, or null */
+  public String textOf(String imageLoc) {
+    BoardIndex.Place place = places().placeOf(imageLoc);
+    return (place == null) ? null : place.getText();
+  } // textOf(String)
+
+  /* Determines the top-level image of the first category imageLoc is in, "" for the top level, or null */
+  public String categoryOf(String imageLoc) {
+    BoardIndex.Place place = places().placeOf(imageLoc);
+    return (place == null) ? null : place.categoryLoc;
+  } // categoryOf(String)
+
+  /* Provides the images that say text, ignoring case and spacing */
+  public List<String> imageLocsFor(String text) {
+    return places().imageLocsFor(text);
+  } // imageLocsFor(String)
+
+  /* 
+   * Moves to the category that imageLoc is in and taps it there, as getText
+   * does, and returns its text, or null if imageLoc is not on the board
+   */
+  public String goTo(String imageLoc) {
+    String categoryLoc = categoryOf(imageLoc);
+    if (categoryLoc == null) {
+      return null;
+    } // if
+    reset();
+    if (!categoryLoc.equals("")) {
+      this.current = category(categoryLoc);
+      this.currentLoc = categoryLoc;
+    } // if
+    return getText(imageLoc);
+  } // goTo(String)
+
+  /* Provides an array of all the images in the current category, likeliest first if asked for */
   public String[] getImageLocs() throws Exception {
-    try {
-      return this.current.getImages();
-    } catch (Exception e) {
-       return new String[] {"Error"};
-    }
+    UsageModel usage = this.usage;
+    if (usage != null && this.likelyFirst) {
+      return this.current.getImages(usage);
+    } // if
+    return this.current.getImages();
   } // getImagesLocs()
 
+  /* 
+   * Provides an array of the images in the category behind the top-level
+   * image categoryLoc, or of the top level for "", without moving there,
+   * so that many readers can each keep their own place
+   */
+  public String[] getImageLocs(String categoryLoc) {
+    AACCategory category = categoryLoc.equals("") ? this.topLevel : category(categoryLoc);
+    if (category == null) {
+      return new String[0];
+    } // if
+    return category.getImages();
+  } // getImageLocs(String)
+
+  /* 
+   * Determines the text of imageLoc in the category behind the top-level
+   * image categoryLoc, or in the top level for "", without moving there, or null
+   */
+  public String getText(String categoryLoc, String imageLoc) {
+    AACCategory category = categoryLoc.equals("") ? this.topLevel : category(categoryLoc);
+    if (category == null || !category.hasImage(imageLoc)) {
+      return null;
+    } // if
+    return category.getText(imageLoc);
+  } // getText(String, String)
+
+  /* Provides a live, read-only view of the images in the current category */
+  public Collection<String> imageLocs() {
+    return this.current.images();
+  } // imageLocs()
+
+  /* Provides a read-only view of the images in the category behind imageLoc, or an empty one */
+  public Collection<String> imageLocsOf(String imageLoc) {
+    AACCategory category = category(imageLoc);
+    if (category == null) {
+      return Collections.emptyList();
+    } // if
+    return category.images();
+  } // imageLocsOf(String)
+
+  /* Provides a live, read-only view of the image/text mappings in the current category */
+  public Collection<Map.Entry<String,String>> items() {
+    return this.current.items();
+  } // items()
+
+  /* Provides a read-only view of the image/text mappings in the category behind imageLoc, or an empty one */
+  public Collection<Map.Entry<String,String>> itemsOf(String imageLoc) {
+    AACCategory category = category(imageLoc);
+    if (category == null) {
+      return Collections.emptyList();
+    } // if
+    return category.items();
+  } // itemsOf(String)
+
+  /* 
+   * Provides up to count of the image/text mappings in the category behind
+   * the top-level image categoryLoc, in the order getImageLocs would show
+   * them there; a category that is not loaded is read but not kept, so
+   * looking ahead does not push out the categories in use
+   */
+  public List<Map.Entry<String,String>> firstItemsOf(String categoryLoc, int count) {
+    AACCategory category = peek(categoryLoc);
+    if (category == null) {
+      return Collections.emptyList();
+    } // if
+    UsageModel usage = this.usage;
+    String[] images = (usage != null && this.likelyFirst) ? category.getImages(usage)
+        : category.getImages();
+    List<Map.Entry<String,String>> items = new ArrayList<Map.Entry<String,String>>();
+    for (int i = 0; i < Math.min(count, images.length); i++) {
+      items.add(new AbstractMap.SimpleImmutableEntry<String,String>(images[i],
+          category.getText(images[i])));
+    } // for
+    return items;
+  } // firstItemsOf(String, int)
+
   /* Resets the current category of the AAC back to the default category */
   public void reset() {
-    this.arr = new AssociativeArray<String, AACCategory>();
+    this.current = this.topLevel;
+    this.currentLoc = "";
   } // reset()
 
   /* Gets the current category */
@@ -87,44 +421,451 @@ public class AACMappings
     return this.current.name;
   } //getCurrentCategory()
 
+  /* Gets the top-level image of the current category, or "" at the top level */
+  public String getCurrentCategoryLoc() {
+    return this.currentLoc;
+  } // getCurrentCategoryLoc()
+
   /* Determines if the image represents a category of text to speak */
   public boolean isCategory (String imageLoc) {
-    return this.arr.hasKey(imageLoc);
+    return category(imageLoc) != null;
   } // isCategory(String)
 
   /* Write the AAC mappings stored to a file */
   public void writeToFile (String filename) {
+    long start = Metrics.start();
     try {
-      PrintWriter pen = new PrintWriter(new File(filename));
-      
-      // Category on home screen
-      for(String category : topLevel.getImages()){
-        if(category!= null){
-          pen.println(">" + category + " " + topLevel.getText(category));
-
-          // Image within a category
-          for(String location : arr.get(category).getImages()){
-            if(location != null){
-              pen.println(location + " " + arr.get(category).getText(location));
-            } 
-          } 
-        } 
-      } 
-      pen.close();
+      write(Paths.get(filename));
     } catch (Exception e) {
       System.err.println("Error: unable to write to " + filename);
     }
+    if (Metrics.ENABLED) {
+      Metrics.WRITE.recordSince(start);
+    } // if
   } // writeToFile(String)
 
-  /* Adds the mapping to the current category */
+  /* Writes the mappings to path as text, the way the constructor reads them */
+  void write (Path path) throws IOException {
+    try (PrintWriter pen = new PrintWriter(Files.newBufferedWriter(path))) {
+      // Category on home screen
+      for(Map.Entry<String,String> category : topLevel.items()){
+        pen.println(category.getKey() + " " + category.getValue());
+
+        // Image within a category, marked with >
+        AACCategory items = category(category.getKey());
+        if (items != null) {
+          for(Map.Entry<String,String> location : items.items()){
+            pen.println(">" + location.getKey() + " " + location.getValue());
+          } // for
+        } // if
+      } // for
+      if (pen.checkError()) {
+        throw new IOException("write failed");
+      } // if
+    } // try
+  } // write(Path)
+
+  /* Adds the mapping to the current category, and to the journal if one is open */
   public void add (String imageLoc, String text) {
-    if (this.current.name.equals("")) {
+    String categoryLoc = this.currentLoc;
+    apply(categoryLoc, imageLoc, text);
+    if (this.journal != null) {
+      this.journal.append(categoryLoc, imageLoc, text);
+      if (this.journal.shouldCompact()) {
+        this.journal.compact(snapshot());
+      } // if
+    } // if
+  } // add(String)
+
+  /* 
+   * Adds the mapping to the category behind the top-level image categoryLoc,
+   * or to the top level if categoryLoc is "". Adding the same mapping twice
+   * is the same as adding it once, so journal lines may be replayed safely
+   */
+  void apply (String categoryLoc, String imageLoc, String text) {
+    imageLoc = SymbolTable.share(imageLoc);
+    text = SymbolTable.share(text);
+    String[] change = change(categoryLoc, imageLoc, text);
+    if (categoryLoc.equals("")) {
+      // Category first, so that a concurrent reader never sees an item without one
+      if (category(imageLoc) == null) {
+        this.arr.set(imageLoc, newCategory(text));
+      } // if
       this.topLevel.addItem(imageLoc, text);
-      this.arr.set(imageLoc, new AACCategory(text));
     } // if
     else {
-      current.addItem(imageLoc, text);
+      AACCategory category = category(categoryLoc);
+      if (category != null) {
+        category.addItem(imageLoc, text);
+        if (categoryLoc.equals(this.currentLoc) && this.current != category) {
+          // A lazy board evicted the category being shown, and read it again
+          this.current = category;
+        } // if
+      } // if
     } // else
-  } // add(String)
+    if (change != null) {
+      // Only now, so that an index being built sees it, or is told about it
+      indexAdd(change);
+    } // if
+  } // apply(String, String, String)
+
+  /* 
+   * Finds up to k items, in any category, with a word in their text that
+   * starts with prefix, as image/text mappings. The index is built the
+   * first time, unless indexLater already built it or is building it, and
+   * kept up to date by add after that
+   */
+  public List<Map.Entry<String,String>> search (String prefix, int k) {
+    SearchIndex index = this.index;
+    if (index == null) {
+      index = buildIndex();
+    } // if
+    return index.search(prefix, k);
+  } // search(String, int)
+
+  /* 
+   * Builds the search index on a background thread, so that the first
+   * search need not, and builds it again there each time an edit of the
+   * board drops it
+   */
+  public void indexLater() {
+    this.indexEagerly = true;
+    CompletableFuture.runAsync(this::buildIndex);
+  } // indexLater()
+
+  /* 
+   * Indexes every item on the board at once, unless another thread just did.
+   * This reads every category, but a lazy or compiled board keeps only the
+   * ones it had already loaded. Adds made meanwhile are replayed onto the
+   * index before it is published, and an edit of the board made meanwhile
+   * starts it over
+   */
+  synchronized SearchIndex buildIndex() {
+    SearchIndex index = this.index;
+    while (index == null) {
+      int edits;
+      synchronized (this.indexLock) {
+        this.indexPending = new ArrayList<String[]>();
+        edits = this.edits;
+      } // synchronized
+      SearchIndex built = this.scanIndex();
+      while (true) {
+        ArrayList<String[]> changes;
+        synchronized (this.indexLock) {
+          if (this.edits != edits) {
+            // The board changed under the scan, so start over
+            this.indexPending = null;
+            break;
+          } // if
+          if (this.indexPending.isEmpty()) {
+            this.indexPending = null;
+            this.index = built;
+            index = built;
+            break;
+          } // if
+          changes = this.indexPending;
+          this.indexPending = new ArrayList<String[]>();
+        } // synchronized
+        for (String[] change : changes) {
+          indexChange(built, change);
+        } // for
+      } // while
+    } // while
+    return index;
+  } // buildIndex()
+
+  /* Makes a search index of every item on the board */
+  SearchIndex scanIndex() {
+    ArrayList<String> locs = new ArrayList<String>();
+    ArrayList<String> texts = new ArrayList<String>();
+    for (Map.Entry<String,String> top : this.topLevel.items()) {
+      locs.add(top.getKey());
+      texts.add(top.getValue());
+      AACCategory category = peek(top.getKey());
+      if (category != null) {
+        for (Map.Entry<String,String> item : category.items()) {
+          locs.add(item.getKey());
+          texts.add(item.getValue());
+        } // for
+      } // if
+    } // for
+    SearchIndex index = new SearchIndex();
+    index.addAll(locs.toArray(new String[locs.size()]), texts.toArray(new String[texts.size()]));
+    return index;
+  } // scanIndex()
+
+  /* 
+   * Indexes where every item on the board is, unless another thread just did.
+   * Like buildIndex, this reads every category without keeping the ones a
+   * lazy or compiled board had not loaded, replays the adds made meanwhile,
+   * and starts over if the board is edited meanwhile
+   */
+  BoardIndex places() {
+    BoardIndex places = this.places;
+    if (places != null) {
+      return places;
+    } // if
+    synchronized (this.placesBuild) {
+      places = this.places;
+      while (places == null) {
+        int edits;
+        synchronized (this.indexLock) {
+          this.placesPending = new ArrayList<String[]>();
+          edits = this.edits;
+        } // synchronized
+        BoardIndex built = this.scanPlaces();
+        while (true) {
+          ArrayList<String[]> changes;
+          synchronized (this.indexLock) {
+            if (this.edits != edits) {
+              this.placesPending = null;
+              break;
+            } // if
+            if (this.placesPending.isEmpty()) {
+              this.placesPending = null;
+              this.places = built;
+              places = built;
+              break;
+            } // if
+            changes = this.placesPending;
+            this.placesPending = new ArrayList<String[]>();
+          } // synchronized
+          for (String[] change : changes) {
+            built.put(change[0], change[1], change[2]);
+          } // for
+        } // while
+      } // while
+    } // synchronized
+    return places;
+  } // places()
+
+  /* Makes an index of where every item on the board is */
+  BoardIndex scanPlaces() {
+    BoardIndex places = new BoardIndex();
+    for (Map.Entry<String,String> top : this.topLevel.items()) {
+      places.put("", top.getKey(), top.getValue());
+      AACCategory category = peek(top.getKey());
+      if (category != null) {
+        for (Map.Entry<String,String> item : category.items()) {
+          places.put(top.getKey(), item.getKey(), item.getValue());
+        } // for
+      } // if
+    } // for
+    return places;
+  } // scanPlaces()
+
+  /* 
+   * Describes the change that adding a mapping is about to make, as the
+   * category, image, new text and old text (null for a new image), or
+   * returns null if it changes nothing
+   */
+  String[] change (String categoryLoc, String imageLoc, String text) {
+    AACCategory category = categoryLoc.equals("") ? this.topLevel : category(categoryLoc);
+    if (category == null) {
+      return null;
+    } // if
+    String old = category.hasImage(imageLoc) ? category.getText(imageLoc) : null;
+    if (text.equals(old)) {
+      return null;
+    } // if
+    return new String[] { categoryLoc, imageLoc, text, old };
+  } // change(String, String, String)
+
+  /* 
+   * Adds a change that was just made to the indexes, if there are any, or
+   * notes it for those that are being built. A change of the text of an
+   * image retires the old text in the search index
+   */
+  void indexAdd (String[] change) {
+    SearchIndex index;
+    BoardIndex places;
+    synchronized (this.indexLock) {
+      if (this.indexPending != null) {
+        this.indexPending.add(change);
+      } // if
+      if (this.placesPending != null) {
+        this.placesPending.add(change);
+      } // if
+      index = this.index;
+      places = this.places;
+    } // synchronized
+    if (places != null) {
+      places.put(change[0], change[1], change[2]);
+    } // if
+    if (index != null) {
+      indexChange(index, change);
+    } // if
+  } // indexAdd(String[])
+
+  /* Applies a change to a search index */
+  static void indexChange (SearchIndex index, String[] change) {
+    if (change[3] != null) {
+      index.retire(change[1], change[3]);
+    } // if
+    index.add(change[1], change[2]);
+  } // indexChange(SearchIndex, String[])
+
+  /* Makes a copy of the mappings that later changes do not affect */
+  AACMappings snapshot() {
+    return new AACMappings(this);
+  } // snapshot()
+
+  /* 
+   * Replays the changes recorded since the board was last compacted and
+   * starts recording new ones, so that each add is saved as it is made
+   */
+  public void openJournal() throws IOException {
+    if (this.journal != null) {
+      return;
+    } // if
+    Path path = Paths.get(this.filename);
+    ArrayList<String[]> lines = new ArrayList<String[]>();
+    int replayed = BoardJournal.replay(path, this, lines);
+    this.journal = new BoardJournal(path, this.source instanceof MappedBoard);
+    for (String[] line : lines) {
+      this.journal.note(line);
+    } // for
+    if (replayed > 0) {
+      // Fold the replayed changes into the board
+      this.journal.compact(snapshot());
+    } // if
+  } // openJournal()
+
+  /* 
+   * Reads how often each image has been tapped from the file next to the
+   * board, and counts each tap from now on. When likelyFirst is true,
+   * getImageLocs lists the likeliest images first
+   */
+  public void openUsage(boolean likelyFirst) throws IOException {
+    if (this.usage == null) {
+      this.usage = UsageModel.load(Paths.get(this.filename));
+    } // if
+    this.likelyFirst = likelyFirst;
+  } // openUsage(boolean)
+
+  /* Gets the model of how often each image is tapped, or null if it is not open */
+  public UsageModel getUsage() {
+    return this.usage;
+  } // getUsage()
+
+  /* Writes how often each image has been tapped next to the board */
+  void saveUsage() {
+    if (this.usage == null) {
+      return;
+    } // if
+    this.usageSaved.join();
+    saveUsage(this.usage);
+  } // saveUsage()
+
+  /* 
+   * Writes a copy of the usage model in the background, after any earlier
+   * save, so that the caller does not wait for the disk
+   */
+  void saveUsageLater() {
+    if (this.usage == null) {
+      return;
+    } // if
+    UsageModel copy = this.usage.snapshot();
+    this.usageSaved = this.usageSaved.thenRunAsync(() -> saveUsage(copy));
+  } // saveUsageLater()
+
+  /* Writes usage next to the board, reporting any failure */
+  void saveUsage(UsageModel usage) {
+    try {
+      usage.save(Paths.get(this.filename));
+    } catch (IOException e) {
+      System.err.println("Error: unable to save usage for " + this.filename + ": " + e.getMessage());
+    } // try/catch
+  } // saveUsage(UsageModel)
+
+  /* 
+   * Saves the mappings without waiting for the disk: with a journal the
+   * changes are already on their way, so the board is compacted in the
+   * background; without one the whole board is written. The usage model
+   * is always written in the background
+   */
+  public void save() {
+    saveUsageLater();
+    if (this.journal == null) {
+      writeToFile(this.filename);
+      return;
+    } // if
+    this.journal.compact(snapshot());
+  } // save()
+
+  /* 
+   * Watches the board for edits made by others and applies each one, on
+   * applyOn, before passing it to listener. Compiled and lazy boards are not watched
+   */
+  public void watch(Executor applyOn, Consumer<BoardWatcher.Diff> listener) throws IOException {
+    if (this.watcher != null) {
+      return;
+    } // if
+    if (this.source != null) {
+      System.err.println("Error: " + this.filename + " is compiled or lazily loaded, so it is not watched");
+      return;
+    } // if
+    this.watcher = new BoardWatcher(this, Paths.get(this.filename), applyOn, listener);
+  } // watch(Executor, Consumer<BoardWatcher.Diff>)
+
+  /* 
+   * Applies an edit of the board. New and changed categories go in first and
+   * removed ones come out last, so that a reader on another thread never
+   * finds a top-level image without its category
+   */
+  void apply(BoardWatcher.Diff diff) {
+    if (diff.categories.size() > 0) {
+      this.arr.setAll(diff.categories);
+    } // if
+    if (diff.topLevelChanged) {
+      this.topLevel = diff.topLevel;
+    } // if
+    for (String loc : diff.removed) {
+      this.arr.remove(loc);
+    } // for
+
+    String loc = this.currentLoc;
+    if (loc.equals("")) {
+      diff.currentChanged = diff.topLevelChanged;
+      this.current = this.topLevel;
+    } else if (diff.removed.contains(loc)) {
+      diff.currentChanged = true;
+      reset();
+    } else if (diff.changed.contains(loc)) {
+      diff.currentChanged = true;
+      this.current = category(loc);
+    } // if/else
+
+    // Rebuilt when next needed, or now if asked for
+    synchronized (this.indexLock) {
+      this.edits++;
+      this.index = null;
+      this.places = null;
+    } // synchronized
+    if (this.indexEagerly) {
+      CompletableFuture.runAsync(this::buildIndex);
+    } // if
+  } // apply(BoardWatcher.Diff)
+
+  /* Waits for every change to reach the disk, folding the journal into the board, and stops the journal and watcher */
+  public void close() throws IOException, InterruptedException {
+    saveUsage();
+    if (this.watcher != null) {
+      this.watcher.close();
+      this.watcher = null;
+    } // if
+    if (this.journal != null) {
+      if (this.journal.hasChanges()) {
+        // Fold the journal into the board, so the next start need not replay it
+        this.journal.compact(snapshot());
+      } // if
+      this.journal.close();
+      this.journal = null;
+    } // if
+    if (this.source != null) {
+      // Only now, since the compaction reads the board through it
+      this.source.close();
+    } // if
+  } // close()
   
 } // class AACMappings
@@ -2,6 +2,16 @@ package structures;
 
 import static java.lang.reflect.Array.newInstance;
 
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
 /**
  * A basic implementation of Associative Arrays with keys of type K and values of type V.
  * Associative Arrays store key/value pairs and permit you to look up values by key.
@@ -19,6 +29,11 @@ public class AssociativeArray<K, V> {
    */
   static final int DEFAULT_CAPACITY = 16;
 
+  /**
+   * The marker stored in `index` for a slot that holds no entry.
+   */
+  static final int EMPTY = 0;
+
   // +--------+------------------------------------------------------
   // | Fields |
   // +--------+
@@ -29,10 +44,48 @@ public class AssociativeArray<K, V> {
   int size;
 
   /**
-   * The array of key/value pairs.
+   * The array of key/value pairs, in insertion order. Removing a pair leaves
+   * a null hole behind, which is squeezed out the next time the array fills.
    */
   public KVPair<K, V> pairs[];
 
+  /**
+   * The number of slots of `pairs` that have been used, including holes.
+   */
+  int used;
+
+  /**
+   * An open-addressing (linear probing) hash index over `pairs`. Each entry
+   * holds one more than the position of a pair in `pairs`, or EMPTY. The
+   * length is always a power of two and at least twice `pairs.length`, so the
+   * index is never more than half full.
+   */
+  int[] index;
+
+  /**
+   * The number of times pairs have been added, removed or moved, so that
+   * iterators over the views can detect concurrent modification.
+   */
+  int modCount;
+
+  /**
+   * Whether `pairs` and `index` may also belong to a clone. Shared arrays
+   * are copied before the first change, so clone() need not copy anything.
+   */
+  boolean shared;
+
+  /**
+   * The token that marks pairs this associative array may change in place.
+   * clone() hands both copies fresh tokens, so pairs they still share are
+   * replaced rather than changed. Null until the first clone.
+   */
+  Object owner;
+
+  /**
+   * Whether this is a read-only snapshot, which throws on every change.
+   */
+  boolean readOnly;
+
   // +--------------+------------------------------------------------
   // | Constructors |
   // +--------------+
@@ -40,49 +93,88 @@ public class AssociativeArray<K, V> {
   /**
    * Create a new, empty associative array.
    */
-  @SuppressWarnings({"unchecked"})
   public AssociativeArray() {
+    this(DEFAULT_CAPACITY);
+  } // AssociativeArray()
+
+  /**
+   * Create a new, empty associative array with room for capacity pairs
+   * before it needs to grow.
+   */
+  @SuppressWarnings({"unchecked"})
+  public AssociativeArray(int capacity) {
+    if (capacity < 0) {
+      throw new IllegalArgumentException("negative capacity: " + capacity);
+    } // if
     // Creating new arrays is sometimes a PITN.
-    this.pairs = (KVPair<K, V>[]) newInstance((new KVPair<K, V>()).getClass(), DEFAULT_CAPACITY);
+    this.pairs = (KVPair<K, V>[]) newInstance((new KVPair<K, V>()).getClass(), capacity);
+    this.index = new int[indexLength(capacity)];
     this.size = 0;
-  } // AssociativeArray()
+    this.used = 0;
+  } // AssociativeArray(int)
 
   // +------------------+--------------------------------------------
   // | Standard Methods |
   // +------------------+
 
   /**
-   * Create a copy of this AssociativeArray.
+   * Create a copy of this AssociativeArray. The copy shares storage with
+   * the original until one of them changes, so cloning takes constant time
+   * (plus squeezing out any holes left by remove). The first change to
+   * either copies the arrays, without copying the pairs themselves.
    */
   public AssociativeArray<K, V> clone() {
-    AssociativeArray<K, V> clonedArr = new AssociativeArray<K, V>();
-    for (int i = 0; i < this.size; i++) {
-      clonedArr.set(pairs[i].key, pairs[i].value);
-    } // for
+    if (!this.readOnly) {
+      this.compact();
+      this.shared = true;
+      this.owner = new Object();
+    } // if
+    AssociativeArray<K, V> clonedArr = new AssociativeArray<K, V>(0);
+    clonedArr.pairs = this.pairs;
+    clonedArr.index = this.index;
+    clonedArr.size = this.size;
+    clonedArr.used = this.used;
+    clonedArr.shared = true;
+    clonedArr.owner = new Object();
     return clonedArr;
   } // clone()
 
+  /**
+   * Create a read-only copy of this AssociativeArray in constant time. The
+   * snapshot never changes, so it may be handed to other threads; every
+   * method that would change it throws UnsupportedOperationException.
+   */
+  public AssociativeArray<K, V> snapshot() {
+    AssociativeArray<K, V> snap = this.clone();
+    snap.freeze();
+    return snap;
+  } // snapshot()
+
   /**
    * Convert the array to a string.
    */
   public String toString() {
-    String str = "";
     // Check if the associative array is empty
     if (this.size == 0) {
       return "{}";
     }
     // Iterate through the key/value pairs & build a string
-    for (int i = 0; i < this.size; i++) {
-      str += pairs[i].key + ": " + pairs[i].value;
-      if (i < this.size - 1) {
-        str += ", ";
+    StringBuilder str = new StringBuilder("{ ");
+    int seen = 0;
+    for (int i = 0; i < this.used; i++) {
+      if (pairs[i] == null) {
+        continue;
+      } // if
+      str.append(pairs[i].key).append(": ").append(pairs[i].value);
+      if (++seen < this.size) {
+        str.append(", ");
       } // if
       else {
-        str += " ";
+        str.append(" ");
       } // else
     } // for
 
-    return "{ " + str + "}";
+    return str.append("}").toString();
   } // toString()
 
   // +----------------+----------------------------------------------
@@ -91,28 +183,58 @@ public class AssociativeArray<K, V> {
 
   /**
    * Set the value associated with key to value. Future calls to get(key) will return value.
- * @throws KeyNotFoundException
    */
   public void set(K key, V value) {
-    try {
-      // Set key to index
-      int idx = find(key);
-      this.pairs[idx] = new KVPair<K, V>(key, value);
-    } catch (Exception e) {
-      // Expand & add if array is full
-      if (this.pairs.length == size()) {
-        this.expand();
-        this.pairs[this.size] = new KVPair<K, V>(key, value);
-        this.size++;
-        return;
-      } // if
+    long start = Metrics.start();
+    int idx = indexOf(key);
+    if (idx >= 0 && this.pairs[idx].owner == this.owner && !this.readOnly) {
+      // Overwrite the value of an existing key in place
+      this.pairs[idx].value = value;
+    } else {
+      this.unshare();
+      if (idx >= 0) {
+        // The pair may still be seen by a clone, so replace it instead
+        this.pairs[idx] = new KVPair<K, V>(this.pairs[idx].key, value, this.owner);
+      } else {
+        // Make room if array is full
+        if (this.pairs.length == this.used) {
+          this.makeRoom();
+        } // if
 
-      // Add a new key/value pair if the key doesn't exist
-      this.pairs[this.size] = new KVPair<K, V>(key, value);
-      this.size++;
-    } // try/catch
+        // Add a new key/value pair if the key doesn't exist
+        this.append(key, value);
+      } // if/else
+    } // if/else
+    if (Metrics.ENABLED) {
+      Metrics.SET.recordSince(start);
+    } // if
   }  // set(K,V)
 
+  /**
+   * Set each keys[i] to values[i], as if by calling set for each i in turn.
+   * Room for the whole batch is made once up front.
+   */
+  public void setAll(K[] keys, V[] values) {
+    if (keys.length != values.length) {
+      throw new IllegalArgumentException("keys and values differ in length");
+    } // if
+    this.ensureCapacity(this.used + keys.length);
+    for (int i = 0; i < keys.length; i++) {
+      this.set(keys[i], values[i]);
+    } // for
+  } // setAll(K[], V[])
+
+  /**
+   * Set every key/value pair of other in this associative array, in the
+   * order in which they were added to other.
+   */
+  public void setAll(AssociativeArray<? extends K, ? extends V> other) {
+    this.ensureCapacity(this.used + other.size());
+    for (Map.Entry<? extends K, ? extends V> pair : other.entries()) {
+      this.set(pair.getKey(), pair.getValue());
+    } // for
+  } // setAll(AssociativeArray)
+
 
   /**
    * Get the value associated with key.
@@ -120,46 +242,88 @@ public class AssociativeArray<K, V> {
    * @throws KeyNotFoundException when the key does not appear in the associative array.
    */
   public V get(K key) throws KeyNotFoundException {
-    if (!hasKey(key)) {
+    long start = Metrics.start();
+    int idx = indexOf(key);
+    if (Metrics.ENABLED) {
+      Metrics.GET.recordSince(start);
+    } // if
+    if (idx < 0) {
       throw new KeyNotFoundException();
     } // if
-    return this.pairs[find(key)].value;
+    return this.pairs[idx].value;
   } // get(K)
 
+  /**
+   * Get the value associated with key, or defaultValue if the key does not
+   * appear in the associative array. Unlike get, a miss throws nothing.
+   */
+  public V getOrDefault(K key, V defaultValue) {
+    long start = Metrics.start();
+    int idx = indexOf(key);
+    if (Metrics.ENABLED) {
+      Metrics.GET.recordSince(start);
+    } // if
+    if (idx < 0) {
+      return defaultValue;
+    } // if
+    return this.pairs[idx].value;
+  } // getOrDefault(K, V)
+
+  /**
+   * Get the value associated with key. If there is none, compute one with
+   * mappingFunction, set it, and return it.
+   */
+  public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+    int idx = indexOf(key);
+    if (idx >= 0) {
+      return this.pairs[idx].value;
+    } // if
+    V value = mappingFunction.apply(key);
+    this.set(key, value);
+    return value;
+  } // computeIfAbsent(K, Function)
+
   /**
    * Determine if key appears in the associative array.
    */
   public boolean hasKey(K key) {
-    try {
-      find (key);
-      return true;
-    } catch (Exception e) {
-      return false;
-    } // try/catch
+    return indexOf(key) >= 0;
   } // hasKey(K)
 
+  /**
+   * Find the position in `pairs` of the entry that contains key, or -1 if
+   * there is no such entry. This is the exception-free counterpart of find.
+   */
+  public int indexOf(K key) {
+    int pos = probe(key);
+    if (pos < 0) {
+      return -1;
+    } // if
+    return this.index[pos] - 1;
+  } // indexOf(K)
+
   /**
    * Remove the key/value pair associated with a key. Future calls to get(key) will throw an
    * exception. If the key does not appear in the associative array, does nothing.
    */
   public void remove(K key) {
-    try {
-      // Remove pair at idx
-      int idx = find(key);
-      this.pairs[idx] = null;
-
-      // Shift remaining elements to the left
-      for (int i = idx + 1; i < this.size; i++) {
-        this.pairs[i-1] = this.pairs[i];
-        this.pairs[i] = null;
-      } // for
+    int pos = probe(key);
+    if (pos < 0) {
+      return;
+    } // if
+    this.unshare();
 
-      // Decrement size
-      this.size--;
+    // Remove pair at idx, leaving a hole that makeRoom() will squeeze out
+    int idx = this.index[pos] - 1;
+    this.deleteIndex(pos);
+    this.pairs[idx] = null;
+    if (idx == this.used - 1) {
+      this.used--;
+    } // if
 
-    } catch (Exception e) {
-      return;
-    } // try/catch
+    // Decrement size
+    this.size--;
+    this.modCount++;
   } // remove(K)
 
   /**
@@ -175,50 +339,372 @@ public class AssociativeArray<K, V> {
   // +-----------------+
 
   /**
-   * Expand the underlying array.
+   * Expand the underlying array. The capacity doubles each time, so a run of
+   * n calls to set copies O(n) pairs in total.
    */
   public void expand() {
-    this.pairs = java.util.Arrays.copyOf(this.pairs, this.pairs.length + DEFAULT_CAPACITY);
+    this.ensureCapacity(Math.max(DEFAULT_CAPACITY, this.pairs.length * 2));
   } // expand()
 
+  /**
+   * Make sure that `pairs` has room for at least capacity slots.
+   */
+  void ensureCapacity(int capacity) {
+    this.unshare();
+    if (capacity <= this.pairs.length) {
+      return;
+    } // if
+    this.pairs = java.util.Arrays.copyOf(this.pairs, capacity);
+    if (Metrics.ENABLED) {
+      Metrics.RESIZES.record(capacity);
+    } // if
+    if (this.index.length < indexLength(this.pairs.length)) {
+      this.rebuildIndex();
+    } // if
+  } // ensureCapacity(int)
+
+  /**
+   * Add a pair for a key that is known not to be present yet. Assumes that
+   * there is room at the end of `pairs`.
+   */
+  void append(K key, V value) {
+    this.pairs[this.used] = new KVPair<K, V>(key, value, this.owner);
+    this.insertIndex(key, this.used);
+    this.used++;
+    this.size++;
+    this.modCount++;
+  } // append(K, V)
+
   /**
    * Find the index of the first entry in `pairs` that contains key. If no such entry is found,
    * throws an exception.
    */
   public int find(K key) throws KeyNotFoundException {
-    for (int i = 0; i < this.size; i++) {
-      // Check if the current entry contains the given key
-      if (this.pairs[i].key != null ) {
-        if (this.pairs[i].key.equals(key)) {
-          return i;
+    long start = Metrics.start();
+    int idx = indexOf(key);
+    if (Metrics.ENABLED) {
+      Metrics.FIND.recordSince(start);
+    } // if
+    if (idx < 0) {
+      throw new KeyNotFoundException();
+    } // if
+    return idx;
+  } // find(K)
+
+  /**
+   * Find the position in `index` that refers to key, or -1 if key does not
+   * appear. A null key is allowed and hashes to zero.
+   */
+  int probe(K key) {
+    int mask = this.index.length - 1;
+    int probes = 1;
+    for (int i = hash(key) & mask; ; i = (i + 1) & mask, probes++) {
+      int slot = this.index[i];
+      if (slot == EMPTY) {
+        if (Metrics.ENABLED) {
+          Metrics.PROBES.record(probes);
         } // if
+        return -1;
       } // if
-      else {
-        if(this.pairs[i].key == key) {
-          return i;
+      K other = this.pairs[slot - 1].key;
+      if (other == key || (other != null && other.equals(key))) {
+        if (Metrics.ENABLED) {
+          Metrics.PROBES.record(probes);
         } // if
-      } // else
-    } // for 
-    throw new KeyNotFoundException();
-  } // find(K)
+        return i;
+      } // if
+    } // for
+  } // probe(K)
+
+  /**
+   * Record in the index that key lives at position idx of `pairs`. Assumes
+   * that key is not already indexed.
+   */
+  void insertIndex(K key, int idx) {
+    int mask = this.index.length - 1;
+    int i = hash(key) & mask;
+    while (this.index[i] != EMPTY) {
+      i = (i + 1) & mask;
+    } // while
+    this.index[i] = idx + 1;
+  } // insertIndex(K, int)
+
+  /**
+   * Clear position pos of the index, shifting later entries of the same
+   * probe run back so that no tombstones are needed.
+   */
+  void deleteIndex(int pos) {
+    int mask = this.index.length - 1;
+    int hole = pos;
+    for (int i = (pos + 1) & mask; this.index[i] != EMPTY; i = (i + 1) & mask) {
+      int home = hash(this.pairs[this.index[i] - 1].key) & mask;
+      // Move the entry back unless its home lies cyclically in (hole, i]
+      if (((i - home) & mask) >= ((i - hole) & mask)) {
+        this.index[hole] = this.index[i];
+        hole = i;
+      } // if
+    } // for
+    this.index[hole] = EMPTY;
+  } // deleteIndex(int)
+
+  /**
+   * Rebuild the index from scratch to fit the current `pairs`.
+   */
+  void rebuildIndex() {
+    this.index = new int[indexLength(this.pairs.length)];
+    for (int i = 0; i < this.used; i++) {
+      if (this.pairs[i] != null) {
+        this.insertIndex(this.pairs[i].key, i);
+      } // if
+    } // for
+  } // rebuildIndex()
+
+  /**
+   * Make room for at least one more pair at the end of `pairs`, either by
+   * squeezing out the holes left by remove() or by expanding.
+   */
+  void makeRoom() {
+    int holes = this.used - this.size;
+    if (holes > 0 && holes >= this.used / 4) {
+      this.compact();
+    } else {
+      this.expand();
+    } // if/else
+  } // makeRoom()
+
+  /**
+   * Squeeze the holes left by remove() out of `pairs`, keeping the order of
+   * the remaining pairs, so that pairs[0 .. size) are exactly the entries.
+   */
+  void compact() {
+    if (this.used == this.size) {
+      return;
+    } // if
+    this.unshare();
+    int dest = 0;
+    for (int i = 0; i < this.used; i++) {
+      if (this.pairs[i] != null) {
+        this.pairs[dest++] = this.pairs[i];
+      } // if
+    } // for
+    java.util.Arrays.fill(this.pairs, dest, this.used, null);
+    this.used = dest;
+    this.modCount++;
+    this.rebuildIndex();
+  } // compact()
+
+  /**
+   * Take private copies of `pairs` and `index` if a clone may share them.
+   * Every change goes through here first.
+   */
+  void unshare() {
+    if (this.readOnly) {
+      throw new UnsupportedOperationException("read-only snapshot");
+    } // if
+    if (this.shared) {
+      this.pairs = this.pairs.clone();
+      this.index = this.index.clone();
+      this.shared = false;
+    } // if
+  } // unshare()
+
+  /**
+   * Make this associative array read-only. It must hold no holes, so that
+   * readers never need to compact it.
+   */
+  void freeze() {
+    this.compact();
+    this.readOnly = true;
+  } // freeze()
+
+  /**
+   * Compute the hash of a key, spreading the high bits downward because the
+   * index is masked to a power of two.
+   */
+  static int hash(Object key) {
+    if (key == null) {
+      return 0;
+    } // if
+    int h = key.hashCode();
+    return h ^ (h >>> 16);
+  } // hash(Object)
+
+  /**
+   * Compute the length of index needed for a `pairs` of the given capacity.
+   */
+  static int indexLength(int capacity) {
+    int length = 2;
+    while (length < 2 * capacity) {
+      length <<= 1;
+    } // while
+    return length;
+  } // indexLength(int)
 
   /* 
-   * Return array of keys
+   * Return a new array of exactly size() keys, typed after the first non-null
+   * key, or null if the associative array is empty. Prefer keys(), which
+   * does not copy.
    */
+  @SuppressWarnings({"unchecked"})
   public K[] getKeys() {
-    if (this.pairs.length == 0) {
-      System.err.println("Error: Empty KVPairs");
+    if (this.size == 0) {
       return null;
     } // if
 
-      K[] keys = (K[]) newInstance((this.pairs[0].key).getClass(), this.pairs.length);
-      // Traverse & add key
-      for (int i = 0; i < this.size(); i++) {
-        if (this.pairs[i].key != null) {
-          keys[i] = this.pairs[i].key;
+    Class<?> type = Object.class;
+    for (int i = 0; i < this.used; i++) {
+      if (this.pairs[i] != null && this.pairs[i].key != null) {
+        type = this.pairs[i].key.getClass();
+        break;
+      } // if
+    } // for
+    return this.keys().toArray((K[]) newInstance(type, this.size));
+  } // getKeys()
+
+  // +-------+-------------------------------------------------------
+  // | Views |
+  // +-------+
+
+  /**
+   * A read-only view of the keys, in insertion order. The view reads the
+   * backing storage directly, so it reflects later changes and costs
+   * nothing to create.
+   */
+  public Collection<K> keys() {
+    return new View<K>(pair -> pair.key);
+  } // keys()
+
+  /**
+   * A read-only view of the values, in the insertion order of their keys.
+   */
+  public Collection<V> values() {
+    return new View<V>(pair -> pair.value);
+  } // values()
+
+  /**
+   * A read-only view of the key/value pairs, in insertion order.
+   */
+  public Collection<Map.Entry<K, V>> entries() {
+    return new View<Map.Entry<K, V>>(pair -> pair);
+  } // entries()
+
+  /**
+   * A view of one part of each pair. Iterators are fail-fast, and
+   * spliterators of an array with no holes are SIZED and SUBSIZED so that
+   * parallel streams split evenly.
+   */
+  class View<T> extends AbstractCollection<T> {
+    /**
+     * Pulls the viewed part out of a pair.
+     */
+    final Function<KVPair<K, V>, T> part;
+
+    View(Function<KVPair<K, V>, T> part) {
+      this.part = part;
+    } // View(Function)
+
+    public int size() {
+      return AssociativeArray.this.size;
+    } // size()
+
+    public Iterator<T> iterator() {
+      return new Iterator<T>() {
+        int i = 0;
+        int expected = AssociativeArray.this.modCount;
+
+        public boolean hasNext() {
+          while (i < used && pairs[i] == null) {
+            i++;
+          } // while
+          return i < used;
+        } // hasNext()
+
+        public T next() {
+          if (expected != modCount) {
+            throw new ConcurrentModificationException();
+          } // if
+          if (!hasNext()) {
+            throw new NoSuchElementException();
+          } // if
+          return part.apply(pairs[i++]);
+        } // next()
+      };
+    } // iterator()
+
+    public Spliterator<T> spliterator() {
+      // Reading must not change the array, so holes are skipped rather than compacted
+      int used = AssociativeArray.this.used;
+      return new PairSpliterator<T>(0, used, used == AssociativeArray.this.size, this.part);
+    } // spliterator()
+  } // class View<T>
+
+  /**
+   * A spliterator over pairs[lo .. hi), skipping holes. It knows its exact
+   * size only if there are none.
+   */
+  class PairSpliterator<T> implements Spliterator<T> {
+    int lo;
+    final int hi;
+    final boolean exact;
+    final int expected;
+    final Function<KVPair<K, V>, T> part;
+
+    PairSpliterator(int lo, int hi, boolean exact, Function<KVPair<K, V>, T> part) {
+      this.lo = lo;
+      this.hi = hi;
+      this.exact = exact;
+      this.part = part;
+      this.expected = modCount;
+    } // PairSpliterator(int, int, boolean, Function)
+
+    public boolean tryAdvance(Consumer<? super T> action) {
+      KVPair<K, V>[] a = pairs;
+      while (this.lo < this.hi && a[this.lo] == null) {
+        this.lo++;
+      } // while
+      if (this.lo >= this.hi) {
+        return false;
+      } // if
+      action.accept(this.part.apply(a[this.lo++]));
+      if (this.expected != modCount) {
+        throw new ConcurrentModificationException();
+      } // if
+      return true;
+    } // tryAdvance(Consumer)
+
+    public void forEachRemaining(Consumer<? super T> action) {
+      KVPair<K, V>[] a = pairs;
+      for (int i = this.lo; i < this.hi; i++) {
+        if (a[i] != null) {
+          action.accept(this.part.apply(a[i]));
         } // if
       } // for
-      return keys;
-  } // getKeys()
+      this.lo = this.hi;
+      if (this.expected != modCount) {
+        throw new ConcurrentModificationException();
+      } // if
+    } // forEachRemaining(Consumer)
+
+    public Spliterator<T> trySplit() {
+      int mid = (this.lo + this.hi) >>> 1;
+      if (mid <= this.lo) {
+        return null;
+      } // if
+      PairSpliterator<T> prefix = new PairSpliterator<T>(this.lo, mid, this.exact, this.part);
+      this.lo = mid;
+      return prefix;
+    } // trySplit()
+
+    public long estimateSize() {
+      return this.hi - this.lo;
+    } // estimateSize()
+
+    public int characteristics() {
+      if (this.exact) {
+        return Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED;
+      } // if
+      return Spliterator.ORDERED;
+    } // characteristics()
+  } // class PairSpliterator<T>
 
 } // class AssociativeArray
\ No newline at end of file
@@ -0,0 +1,371 @@
+package structures;
+
+import com.sun.speech.freetts.Voice;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * Speaks with audio that FreeTTS rendered ahead of time.
+ *
+ * A board says the same few hundred texts over and over, so each text is
+ * synthesized once, into a CapturingAudioPlayer, and its PCM is kept under
+ * a key made of the text, the voice, and its rate and pitch. The most
+ * recently used audio stays in memory up to a budget of bytes; the rest
+ * spills to WAV files in a cache directory, where it also survives a
+ * restart. Playing a text that is cached only writes its bytes to a
+ * javax.sound.sampled line that stays open between utterances.
+ *
+ * @author Joyce Gill
+ */
+public class AudioCache implements SpeechQueue.Speaker {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The number of bytes written to the line at a time, which bounds how
+   * long a cancel takes to be heard.
+   */
+  static final int CHUNK = 4096;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The voice that renders the audio, and the player it renders into.
+   * Both are used only while holding the player's lock.
+   */
+  final Voice voice;
+  final CapturingAudioPlayer player = new CapturingAudioPlayer();
+
+  /**
+   * The most bytes of PCM kept in memory.
+   */
+  final long budget;
+
+  /**
+   * Where audio goes when it no longer fits in memory, or null.
+   */
+  final Path spillDir;
+
+  /**
+   * The audio in memory, least recently used first, and its total size.
+   */
+  final LinkedHashMap<String,Clip> clips = new LinkedHashMap<String,Clip>(64, 0.75f, true);
+  long bytes;
+
+  /**
+   * Counts of plays from memory, from disk, and that had to be rendered.
+   */
+  long memoryHits;
+  long diskHits;
+  long rendered;
+
+  /**
+   * The line that plays the audio, kept open between clips of the same
+   * format, and whether the clip being played has been cancelled.
+   */
+  SourceDataLine line;
+  volatile boolean cancelled;
+
+  /**
+   * The thread that renders ahead of time.
+   */
+  final ExecutorService renderer = Executors.newSingleThreadExecutor(task -> {
+    Thread thread = new Thread(task, "audio-prerender");
+    thread.setDaemon(true);
+    thread.setPriority(Thread.MIN_PRIORITY);
+    return thread;
+  });
+
+  /**
+   * Rendered audio.
+   */
+  static class Clip {
+    final AudioFormat format;
+    final byte[] pcm;
+
+    Clip(AudioFormat format, byte[] pcm) {
+      this.format = format;
+      this.pcm = pcm;
+    } // Clip(AudioFormat, byte[])
+  } // class Clip
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a cache that renders with voice, which has been allocated, and
+   * keeps budget bytes of audio in memory and the rest in spillDir (or
+   * nowhere, if spillDir is null).
+   */
+  public AudioCache(Voice voice, long budget, Path spillDir) {
+    this.voice = voice;
+    this.budget = budget;
+    this.spillDir = spillDir;
+    this.voice.setAudioPlayer(this.player);
+  } // AudioCache(Voice, long, Path)
+
+  // +----------------+----------------------------------------------
+  // | Public Methods |
+  // +----------------+
+
+  /**
+   * Play text, rendering it first if it is not cached, and return when it
+   * has been played or cancelled.
+   */
+  public void speak(String text) throws Exception {
+    this.play(this.clip(text));
+  } // speak(String)
+
+  /**
+   * Cut short the text being played, or about to be.
+   */
+  public void cancel() {
+    this.cancelled = true;
+    SourceDataLine playing = this.line;
+    if (playing != null) {
+      playing.stop();
+      playing.flush();
+    } // if
+  } // cancel()
+
+  /**
+   * Forget any earlier cancel, before the next text is played.
+   */
+  public void reset() {
+    this.cancelled = false;
+  } // reset()
+
+  /**
+   * Render text on the background thread, if it is not cached yet, so
+   * that it is ready by the time it is spoken.
+   */
+  public void prepare(String text) {
+    this.prerender(Collections.singletonList(text));
+  } // prepare(String)
+
+  /**
+   * Render each of texts that is not cached yet, on a background thread.
+   */
+  public void prerender(Collection<String> texts) {
+    ArrayList<String> copy = new ArrayList<String>(texts);
+    this.renderer.execute(() -> {
+      for (String text : copy) {
+        this.clip(text);
+      } // for
+    });
+  } // prerender(Collection<String>)
+
+  /**
+   * Render text without keeping it, to load the lexicon and let the JIT
+   * compile the synthesis code before the first real tap.
+   */
+  public void warmUp(String text) {
+    this.render(text);
+  } // warmUp(String)
+
+  /**
+   * Close the line and stop rendering ahead.
+   */
+  public synchronized void close() {
+    this.renderer.shutdownNow();
+    if (this.line != null) {
+      this.line.close();
+      this.line = null;
+    } // if
+  } // close()
+
+  public synchronized String toString() {
+    return this.clips.size() + " clips, " + this.bytes + " of " + this.budget + " bytes, "
+        + this.memoryHits + " from memory, " + this.diskHits + " from disk, " + this.rendered
+        + " rendered";
+  } // toString()
+
+  // +-----------------+---------------------------------------------
+  // | Private Methods |
+  // +-----------------+
+
+  /**
+   * The key for text in the current voice.
+   */
+  String key(String text) {
+    return this.voice.getName() + "|" + this.voice.getRate() + "|" + this.voice.getPitch()
+        + "|" + text;
+  } // key(String)
+
+  /**
+   * The audio of text: from memory, from disk, or freshly rendered.
+   */
+  Clip clip(String text) {
+    String key = this.key(text);
+    synchronized (this) {
+      Clip clip = this.clips.get(key);
+      if (clip != null) {
+        this.memoryHits++;
+        return clip;
+      } // if
+    } // synchronized
+    Clip clip = this.readSpilled(key);
+    if (clip != null) {
+      synchronized (this) {
+        this.diskHits++;
+      } // synchronized
+      this.keep(key, clip);
+      return clip;
+    } // if
+    synchronized (this.player) {
+      // It may have been rendered ahead while we waited for the voice
+      synchronized (this) {
+        clip = this.clips.get(key);
+      } // synchronized
+      if (clip == null) {
+        clip = this.render(text);
+        this.keep(key, clip);
+      } // if
+    } // synchronized
+    return clip;
+  } // clip(String)
+
+  /**
+   * Synthesize text into PCM.
+   */
+  Clip render(String text) {
+    synchronized (this.player) {
+      this.player.reset();
+      this.voice.speak(text);
+      Clip clip = new Clip(this.player.getAudioFormat(), this.player.take());
+      synchronized (this) {
+        this.rendered++;
+      } // synchronized
+      return clip;
+    } // synchronized
+  } // render(String)
+
+  /**
+   * Keep clip in memory, spilling the least recently used clips to disk if
+   * they no longer fit.
+   */
+  void keep(String key, Clip clip) {
+    ArrayList<Map.Entry<String,Clip>> spilled = new ArrayList<Map.Entry<String,Clip>>();
+    synchronized (this) {
+      Clip old = this.clips.put(key, clip);
+      if (old != null) {
+        this.bytes -= old.pcm.length;
+      } // if
+      this.bytes += clip.pcm.length;
+      Iterator<Map.Entry<String,Clip>> lru = this.clips.entrySet().iterator();
+      while (this.bytes > this.budget && this.clips.size() > 1 && lru.hasNext()) {
+        Map.Entry<String,Clip> victim = lru.next();
+        lru.remove();
+        this.bytes -= victim.getValue().pcm.length;
+        spilled.add(victim);
+      } // while
+    } // synchronized
+    for (Map.Entry<String,Clip> victim : spilled) {
+      this.spill(victim.getKey(), victim.getValue());
+    } // for
+  } // keep(String, Clip)
+
+  /**
+   * The file that holds the audio for key.
+   */
+  Path spillFile(String key) {
+    UUID name = UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8));
+    return this.spillDir.resolve(name + ".wav");
+  } // spillFile(String)
+
+  /**
+   * Write clip to disk, if there is a cache directory.
+   */
+  void spill(String key, Clip clip) {
+    if (this.spillDir == null) {
+      return;
+    } // if
+    Path file = this.spillFile(key);
+    if (Files.exists(file)) {
+      return;
+    } // if
+    try {
+      Files.createDirectories(this.spillDir);
+      Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+      AudioInputStream audio = new AudioInputStream(new ByteArrayInputStream(clip.pcm),
+          clip.format, clip.pcm.length / clip.format.getFrameSize());
+      AudioSystem.write(audio, AudioFileFormat.Type.WAVE, temp.toFile());
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      System.err.println("Error: unable to cache audio in " + this.spillDir + ": "
+          + e.getMessage());
+    } // try/catch
+  } // spill(String, Clip)
+
+  /**
+   * Read the audio for key back from disk, or return null.
+   */
+  Clip readSpilled(String key) {
+    if (this.spillDir == null) {
+      return null;
+    } // if
+    Path file = this.spillFile(key);
+    if (!Files.exists(file)) {
+      return null;
+    } // if
+    try (AudioInputStream audio = AudioSystem.getAudioInputStream(file.toFile())) {
+      return new Clip(audio.getFormat(), audio.readAllBytes());
+    } catch (Exception e) {
+      System.err.println("Error: unable to read cached audio " + file + ": " + e.getMessage());
+      return null;
+    } // try/catch
+  } // readSpilled(String)
+
+  /**
+   * Play clip, a chunk at a time so that cancel takes effect quickly.
+   */
+  void play(Clip clip) throws LineUnavailableException {
+    SourceDataLine out = this.line(clip.format);
+    out.start();
+    for (int i = 0; i < clip.pcm.length && !this.cancelled; i += CHUNK) {
+      out.write(clip.pcm, i, Math.min(CHUNK, clip.pcm.length - i));
+    } // for
+    if (!this.cancelled) {
+      out.drain();
+    } // if
+  } // play(Clip)
+
+  /**
+   * A line open for format, reusing the last one if it matches.
+   */
+  synchronized SourceDataLine line(AudioFormat format) throws LineUnavailableException {
+    if (this.line != null && this.line.getFormat().matches(format)) {
+      return this.line;
+    } // if
+    if (this.line != null) {
+      this.line.close();
+    } // if
+    SourceDataLine out = AudioSystem.getSourceDataLine(format);
+    out.open(format);
+    this.line = out;
+    return out;
+  } // line(AudioFormat)
+} // class AudioCache
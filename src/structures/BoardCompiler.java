@@ -0,0 +1,190 @@
+package structures;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Compiles boards into the binary format read by MappedBoard, so that
+ * starting the AAC maps the board instead of parsing it.
+ *
+ * Usage: java structures.BoardCompiler AACMappings.txt AACMappings.aacb
+ *
+ * @author Joyce Gill
+ */
+public class BoardCompiler {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The number of each distinct string, in order of first use.
+   */
+  final AssociativeArray<String, Integer> ids = new AssociativeArray<String, Integer>();
+
+  /**
+   * The UTF-8 bytes of every distinct string, and their offsets and lengths.
+   */
+  final ByteArrayOutputStream blob = new ByteArrayOutputStream();
+  int[] strings = new int[64];
+
+  /**
+   * The sections being built, and how much of each is used.
+   */
+  int[] categories = new int[64];
+  int[] items = new int[64];
+  int[] slots = new int[64];
+  int categoryInts;
+  int itemInts;
+  int slotInts;
+
+  // +----------------+----------------------------------------------
+  // | Static Methods |
+  // +----------------+
+
+  /**
+   * Compile the text board in `text` into `compiled`.
+   */
+  public static void compile(Path text, Path compiled) throws IOException {
+    compile(new AACMappings(text.toString()), compiled);
+  } // compile(Path, Path)
+
+  /**
+   * Compile mappings into `compiled`, replacing it atomically.
+   */
+  public static void compile(AACMappings mappings, Path compiled) throws IOException {
+    BoardCompiler compiler = new BoardCompiler();
+    compiler.add(mappings.topLevel);
+    for (Map.Entry<String,String> top : mappings.topLevel.items()) {
+      AACCategory category = mappings.category(top.getKey());
+      compiler.add((category != null) ? category : new AACCategory(top.getValue()));
+    } // for
+
+    Path temp = compiled.resolveSibling(compiled.getFileName() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(temp)))) {
+      compiler.write(out);
+    } // try
+    Files.move(temp, compiled, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  } // compile(AACMappings, Path)
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      System.err.println("Usage: java structures.BoardCompiler <board.txt> <board.aacb>");
+      System.exit(1);
+    } // if
+    compile(Paths.get(args[0]), Paths.get(args[1]));
+  } // main(String[])
+
+  // +-----------------+---------------------------------------------
+  // | Private Methods |
+  // +-----------------+
+
+  /**
+   * Add a category: its directory entry, its items, and its table.
+   */
+  void add(AACCategory category) {
+    int firstItem = this.itemInts / MappedBoard.ITEM_INTS;
+    int count = 0;
+    for (Map.Entry<String,String> item : category.items()) {
+      this.items = append(this.items, this.itemInts, 
+          this.intern(item.getKey()), this.intern(item.getValue()),
+          AssociativeArray.hash(item.getKey()));
+      this.itemInts += MappedBoard.ITEM_INTS;
+      count++;
+    } // for
+
+    // An open-addressing table at most half full, as in AssociativeArray
+    int slotCount = (count == 0) ? 0 : AssociativeArray.indexLength(count);
+    int firstSlot = this.slotInts;
+    if (this.slots.length < firstSlot + slotCount) {
+      this.slots = Arrays.copyOf(this.slots, Math.max(this.slots.length * 2, firstSlot + slotCount));
+    } // if
+    this.slotInts += slotCount;
+    for (int i = 0; i < count; i++) {
+      int hash = this.items[(firstItem + i) * MappedBoard.ITEM_INTS + 2];
+      int s = hash & (slotCount - 1);
+      while (this.slots[firstSlot + s] != 0) {
+        s = (s + 1) & (slotCount - 1);
+      } // while
+      this.slots[firstSlot + s] = i + 1;
+    } // for
+
+    this.categories = append(this.categories, this.categoryInts,
+        this.intern(category.getCategory()), count, firstItem);
+    this.categories = append(this.categories, this.categoryInts + 3, firstSlot, slotCount);
+    this.categoryInts += MappedBoard.CATEGORY_INTS;
+  } // add(AACCategory)
+
+  /**
+   * The number of str in the string table, adding it if it is new.
+   */
+  int intern(String str) {
+    Integer id = this.ids.getOrDefault(str, null);
+    if (id != null) {
+      return id;
+    } // if
+    int next = this.ids.size();
+    byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+    this.strings = append(this.strings, next * MappedBoard.STRING_INTS, this.blob.size(), bytes.length);
+    this.blob.write(bytes, 0, bytes.length);
+    this.ids.set(str, next);
+    return next;
+  } // intern(String)
+
+  /**
+   * Store values into a starting at position `at`, growing it if needed.
+   */
+  static int[] append(int[] a, int at, int... values) {
+    if (a.length < at + values.length) {
+      a = Arrays.copyOf(a, Math.max(a.length * 2, at + values.length));
+    } // if
+    System.arraycopy(values, 0, a, at, values.length);
+    return a;
+  } // append(int[], int, int...)
+
+  /**
+   * Write the header and every section.
+   */
+  void write(DataOutputStream out) throws IOException {
+    int stringCount = this.ids.size();
+    long strings = MappedBoard.HEADER_INTS * 4L;
+    long blob = strings + 4L * stringCount * MappedBoard.STRING_INTS;
+    long categories = blob + this.blob.size();
+    long items = categories + 4L * this.categoryInts;
+    long slots = items + 4L * this.itemInts;
+    if (slots + 4L * this.slotInts > Integer.MAX_VALUE) {
+      throw new IOException("board too large to compile");
+    } // if
+
+    out.writeInt(MappedBoard.MAGIC);
+    out.writeInt(MappedBoard.VERSION);
+    out.writeInt(stringCount);
+    out.writeInt(this.categoryInts / MappedBoard.CATEGORY_INTS);
+    out.writeInt(this.itemInts / MappedBoard.ITEM_INTS);
+    out.writeInt((int) strings);
+    out.writeInt((int) blob);
+    out.writeInt((int) categories);
+    out.writeInt((int) items);
+    out.writeInt((int) slots);
+    writeInts(out, this.strings, stringCount * MappedBoard.STRING_INTS);
+    this.blob.writeTo(out);
+    writeInts(out, this.categories, this.categoryInts);
+    writeInts(out, this.items, this.itemInts);
+    writeInts(out, this.slots, this.slotInts);
+  } // write(DataOutputStream)
+
+  static void writeInts(DataOutputStream out, int[] values, int count) throws IOException {
+    for (int i = 0; i < count; i++) {
+      out.writeInt(values[i]);
+    } // for
+  } // writeInts(DataOutputStream, int[], int)
+} // class BoardCompiler
@@ -0,0 +1,198 @@
+package structures;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Where every item of a board is: for each image, the categories it is in
+ * and what it says there, and for each text, the images that say it.
+ *
+ * The categories are named by their top-level images, and the top level by
+ * "". Texts are matched after normalize, so "Thank you" and " thank  YOU"
+ * are the same text. Each lookup is a hash lookup.
+ *
+ * @author Joyce Gill
+ */
+public class BoardIndex {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The places of each image, the first one it was added to first.
+   */
+  final HashMap<String,Place> places = new HashMap<String,Place>();
+
+  /**
+   * The images that say each normalized text.
+   */
+  final HashMap<String,ArrayList<String>> byText = new HashMap<String,ArrayList<String>>();
+
+  /**
+   * A category that an image is in, what it says there, and the next
+   * category it is in, if any.
+   */
+  public static class Place {
+    public final String categoryLoc;
+    String text;
+    Place next;
+
+    Place(String categoryLoc, String text) {
+      this.categoryLoc = categoryLoc;
+      this.text = text;
+    } // Place(String, String)
+
+    /**
+     * What the image says in this category.
+     */
+    public String getText() {
+      return this.text;
+    } // getText()
+
+    public String toString() {
+      return "\"" + this.text + "\" in \"" + this.categoryLoc + "\"";
+    } // toString()
+  } // class Place
+
+  // +----------------+----------------------------------------------
+  // | Static Methods |
+  // +----------------+
+
+  /**
+   * text in lower case, with runs of spaces made single and the ends
+   * trimmed.
+   */
+  public static String normalize(String text) {
+    StringBuilder normal = new StringBuilder(text.length());
+    boolean space = false;
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (Character.isWhitespace(c)) {
+        space = (normal.length() > 0);
+      } else {
+        if (space) {
+          normal.append(' ');
+          space = false;
+        } // if
+        normal.append(c);
+      } // if/else
+    } // for
+    return normal.toString().toLowerCase(Locale.ROOT);
+  } // normalize(String)
+
+  // +----------------+----------------------------------------------
+  // | Public Methods |
+  // +----------------+
+
+  /**
+   * Note that imageLoc says text in the category behind categoryLoc,
+   * instead of whatever it said there before.
+   */
+  public synchronized void put(String categoryLoc, String imageLoc, String text) {
+    Place place = this.places.get(imageLoc);
+    if (place == null) {
+      this.places.put(imageLoc, new Place(categoryLoc, text));
+      this.link(text, imageLoc);
+      return;
+    } // if
+    Place last = null;
+    for (; place != null; last = place, place = place.next) {
+      if (place.categoryLoc.equals(categoryLoc)) {
+        String old = place.text;
+        place.text = text;
+        if (!normalize(old).equals(normalize(text))) {
+          if (!this.says(imageLoc, old)) {
+            this.unlink(old, imageLoc);
+          } // if
+          this.link(text, imageLoc);
+        } // if
+        return;
+      } // if
+    } // for
+    last.next = new Place(categoryLoc, text);
+    this.link(text, imageLoc);
+  } // put(String, String, String)
+
+  /**
+   * The first category imageLoc was added to, and what it says there, or
+   * null if it is not on the board.
+   */
+  public synchronized Place placeOf(String imageLoc) {
+    return this.places.get(imageLoc);
+  } // placeOf(String)
+
+  /**
+   * Every category imageLoc is in, and what it says in each.
+   */
+  public synchronized List<Place> placesOf(String imageLoc) {
+    ArrayList<Place> all = new ArrayList<Place>();
+    for (Place place = this.places.get(imageLoc); place != null; place = place.next) {
+      all.add(place);
+    } // for
+    return all;
+  } // placesOf(String)
+
+  /**
+   * The images that say text, once normalized, in the order they were
+   * added.
+   */
+  public synchronized List<String> imageLocsFor(String text) {
+    ArrayList<String> locs = this.byText.get(normalize(text));
+    if (locs == null) {
+      return Collections.emptyList();
+    } // if
+    return new ArrayList<String>(locs);
+  } // imageLocsFor(String)
+
+  /**
+   * The numbers of images and of distinct texts.
+   */
+  public synchronized String toString() {
+    return this.places.size() + " images, " + this.byText.size() + " texts";
+  } // toString()
+
+  // +-----------------+---------------------------------------------
+  // | Private Methods |
+  // +-----------------+
+
+  /**
+   * Determine whether imageLoc still says text somewhere.
+   */
+  boolean says(String imageLoc, String text) {
+    String key = normalize(text);
+    for (Place place = this.places.get(imageLoc); place != null; place = place.next) {
+      if (normalize(place.text).equals(key)) {
+        return true;
+      } // if
+    } // for
+    return false;
+  } // says(String, String)
+
+  /**
+   * List imageLoc under text, once.
+   */
+  void link(String text, String imageLoc) {
+    ArrayList<String> locs = this.byText.computeIfAbsent(normalize(text),
+        key -> new ArrayList<String>(1));
+    if (!locs.contains(imageLoc)) {
+      locs.add(imageLoc);
+    } // if
+  } // link(String, String)
+
+  /**
+   * Take imageLoc off the list for text.
+   */
+  void unlink(String text, String imageLoc) {
+    String key = normalize(text);
+    ArrayList<String> locs = this.byText.get(key);
+    if (locs != null) {
+      locs.remove(imageLoc);
+      if (locs.isEmpty()) {
+        this.byText.remove(key);
+      } // if
+    } // if
+  } // unlink(String, String)
+} // class BoardIndex
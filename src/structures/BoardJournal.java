@@ -0,0 +1,395 @@
+package structures;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An append-only journal of the changes made to a board since it was last
+ * saved. Each AACMappings.add becomes one line of the journal, so saving
+ * costs as much as the changes rather than the whole board.
+ *
+ * Lines are written and fsync'd by a background thread, which commits
+ * whatever has queued up since its last fsync as one batch. Now and then
+ * the board is compacted: a snapshot of it is written to a temporary file,
+ * fsync'd, and renamed over the board, and the journal starts over.
+ *
+ * Each line holds the top-level image of the category that was changed
+ * (empty for the top level), the image and the text, separated by tabs.
+ * Replaying a line twice has the same effect as replaying it once, so a
+ * crash between the rename and the truncation loses nothing.
+ *
+ * @author Joyce Gill
+ */
+public class BoardJournal {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The number of lines after which AACMappings compacts the board.
+   */
+  public static final int COMPACT_EVERY = 500;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The board and its journal.
+   */
+  final Path board;
+  final Path journal;
+
+  /**
+   * Whether the board is compiled (see BoardCompiler) rather than text.
+   */
+  final boolean compiled;
+
+  /**
+   * The work for the writer thread: journal lines (String), snapshots to
+   * compact into the board (Compaction), and flush requests
+   * (CountDownLatch), in the order they were asked for.
+   */
+  final LinkedBlockingQueue<Object> queue = new LinkedBlockingQueue<Object>();
+
+  /**
+   * The open journal, used only by the writer thread.
+   */
+  final FileChannel channel;
+
+  /**
+   * The number of lines appended since the last compaction was requested.
+   */
+  int sinceCompaction;
+
+  /**
+   * The changes appended or replayed that the board file does not hold
+   * yet, oldest first, as {categoryLoc, imageLoc, text}; the number of
+   * changes ever noted; and how many of those the board holds. Guarded by
+   * the journal's lock.
+   */
+  final ArrayList<String[]> unsaved = new ArrayList<String[]>();
+  long noted;
+  long saved;
+
+  /**
+   * A snapshot to compact into the board, which holds the first `through`
+   * changes noted.
+   */
+  static class Compaction {
+    final AACMappings snapshot;
+    final long through;
+
+    Compaction(AACMappings snapshot, long through) {
+      this.snapshot = snapshot;
+      this.through = through;
+    } // Compaction(AACMappings, long)
+  } // class Compaction
+
+  /**
+   * The first error the writer thread ran into, if any.
+   */
+  volatile IOException failure;
+
+  /**
+   * When the last compaction replaced the board, or null. BoardWatcher
+   * uses this to tell our own writes from other people's.
+   */
+  volatile FileTime lastCompacted;
+
+  /**
+   * The thread that writes the journal.
+   */
+  final Thread writer;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Open (creating if need be) the journal for board, which lives next to
+   * it with the extension .journal.
+   */
+  public BoardJournal(Path board, boolean compiled) throws IOException {
+    this.board = board;
+    this.journal = journalFor(board);
+    this.compiled = compiled;
+    this.channel = FileChannel.open(this.journal, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    this.writer = new Thread(this::run, "board-journal");
+    this.writer.setDaemon(true);
+    this.writer.start();
+  } // BoardJournal(Path, boolean)
+
+  // +----------------+----------------------------------------------
+  // | Static Methods |
+  // +----------------+
+
+  /**
+   * The journal of board.
+   */
+  public static Path journalFor(Path board) {
+    return board.resolveSibling(board.getFileName() + ".journal");
+  } // journalFor(Path)
+
+  /**
+   * Apply every complete line of the journal of board to mappings, and
+   * return the number applied. A line cut short by a crash is ignored.
+   */
+  public static int replay(Path board, AACMappings mappings) throws IOException {
+    return replay(board, mappings, new ArrayList<String[]>());
+  } // replay(Path, AACMappings)
+
+  /**
+   * Replay the journal of board as replay(Path, AACMappings) does, adding
+   * each line applied to lines.
+   */
+  static int replay(Path board, AACMappings mappings, List<String[]> lines)
+      throws IOException {
+    Path journal = journalFor(board);
+    if (!Files.exists(journal)) {
+      return 0;
+    } // if
+    byte[] bytes = Files.readAllBytes(journal);
+    int applied = 0;
+    int start = 0;
+    for (int i = 0; i < bytes.length; i++) {
+      if (bytes[i] != '\n') {
+        continue;
+      } // if
+      String[] fields = new String(bytes, start, i - start, StandardCharsets.UTF_8).split("\t", -1);
+      start = i + 1;
+      if (fields.length != 3) {
+        continue;
+      } // if
+      String[] line = { unescape(fields[0]), unescape(fields[1]), unescape(fields[2]) };
+      mappings.apply(line[0], line[1], line[2]);
+      lines.add(line);
+      applied++;
+    } // for
+    return applied;
+  } // replay(Path, AACMappings, List<String[]>)
+
+  // +----------------+----------------------------------------------
+  // | Public Methods |
+  // +----------------+
+
+  /**
+   * Queue the addition of imageLoc/text to the category behind categoryLoc
+   * (or to the top level, if categoryLoc is empty). Returns at once.
+   */
+  public void append(String categoryLoc, String imageLoc, String text) {
+    this.note(new String[] { categoryLoc, imageLoc, text });
+    this.queue.add(escape(categoryLoc) + "\t" + escape(imageLoc) + "\t" + escape(text) + "\n");
+    this.sinceCompaction++;
+  } // append(String, String, String)
+
+  /**
+   * Note a change that is in the journal but not yet in the board.
+   */
+  synchronized void note(String[] change) {
+    this.unsaved.add(change);
+    this.noted++;
+  } // note(String[])
+
+  /**
+   * The changes, as {categoryLoc, imageLoc, text}, that are in the journal
+   * but not yet in the board file, oldest first. An edit of the board made
+   * by someone else does not hold them, so they must be applied over it.
+   */
+  public synchronized List<String[]> unsaved() {
+    return new ArrayList<String[]>(this.unsaved);
+  } // unsaved()
+
+  /**
+   * Determine whether enough has been appended that it is time to compact.
+   */
+  public boolean shouldCompact() {
+    return this.sinceCompaction >= COMPACT_EVERY;
+  } // shouldCompact()
+
+  /**
+   * Determine whether anything has been appended since the last compaction
+   * was requested.
+   */
+  public boolean hasChanges() {
+    return this.sinceCompaction > 0;
+  } // hasChanges()
+
+  /**
+   * Queue the replacement of the board by snapshot, which must not change
+   * afterwards (see AACMappings.snapshot). Returns at once. Lines appended
+   * before this call are part of the snapshot and leave the journal; later
+   * ones stay in it.
+   */
+  public void compact(AACMappings snapshot) {
+    long through;
+    synchronized (this) {
+      through = this.noted;
+    } // synchronized
+    this.queue.add(new Compaction(snapshot, through));
+    this.sinceCompaction = 0;
+  } // compact(AACMappings)
+
+  /**
+   * Wait until everything queued so far is on disk.
+   *
+   * @throws IOException if the writer thread failed.
+   */
+  public void flush() throws IOException, InterruptedException {
+    CountDownLatch done = new CountDownLatch(1);
+    this.queue.add(done);
+    while (!done.await(100, TimeUnit.MILLISECONDS)) {
+      if (!this.writer.isAlive()) {
+        break;
+      } // if
+    } // while
+    if (this.failure != null) {
+      throw this.failure;
+    } // if
+  } // flush()
+
+  /**
+   * Flush and stop the writer thread.
+   */
+  public void close() throws IOException, InterruptedException {
+    this.flush();
+    this.writer.interrupt();
+    this.writer.join();
+    this.channel.close();
+  } // close()
+
+  // +-----------------+---------------------------------------------
+  // | Private Methods |
+  // +-----------------+
+
+  /**
+   * The body of the writer thread: take everything that has queued up,
+   * write it in order, and fsync once for the whole batch.
+   */
+  void run() {
+    ArrayList<Object> batch = new ArrayList<Object>();
+    StringBuilder lines = new StringBuilder();
+    while (true) {
+      try {
+        batch.add(this.queue.take());
+      } catch (InterruptedException e) {
+        return;
+      } // try/catch
+      this.queue.drainTo(batch);
+
+      ArrayList<CountDownLatch> waiting = new ArrayList<CountDownLatch>();
+      try {
+        for (Object work : batch) {
+          if (work instanceof String) {
+            lines.append((String) work);
+          } else if (work instanceof Compaction) {
+            Compaction compaction = (Compaction) work;
+            this.write(lines);
+            this.replaceBoard(compaction.snapshot);
+            this.saved(compaction.through);
+          } else {
+            waiting.add((CountDownLatch) work);
+          } // if/else
+        } // for
+        this.write(lines);
+      } catch (IOException e) {
+        System.err.println("Error: unable to write " + this.journal + ": " + e.getMessage());
+        if (this.failure == null) {
+          this.failure = e;
+        } // if
+        lines.setLength(0);
+      } // try/catch
+      for (CountDownLatch done : waiting) {
+        done.countDown();
+      } // for
+      batch.clear();
+    } // while
+  } // run()
+
+  /**
+   * Note that the board now holds the first through changes.
+   */
+  synchronized void saved(long through) {
+    this.unsaved.subList(0, (int) (through - this.saved)).clear();
+    this.saved = through;
+  } // saved(long)
+
+  /**
+   * Append lines to the journal and fsync it.
+   */
+  void write(StringBuilder lines) throws IOException {
+    if (lines.length() == 0) {
+      return;
+    } // if
+    ByteBuffer bytes = StandardCharsets.UTF_8.encode(lines.toString());
+    while (bytes.hasRemaining()) {
+      this.channel.write(bytes);
+    } // while
+    this.channel.force(false);
+    lines.setLength(0);
+  } // write(StringBuilder)
+
+  /**
+   * Write snapshot to a temporary file, rename it over the board, and
+   * empty the journal, whose lines are all in the snapshot.
+   */
+  void replaceBoard(AACMappings snapshot) throws IOException {
+    if (this.compiled) {
+      BoardCompiler.compile(snapshot, this.board);
+    } else {
+      Path temp = this.board.resolveSibling(this.board.getFileName() + ".tmp");
+      snapshot.write(temp);
+      try (FileChannel written = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+        written.force(true);
+      } // try
+      Files.move(temp, this.board, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } // if/else
+    this.lastCompacted = Files.getLastModifiedTime(this.board);
+    this.channel.truncate(0);
+    this.channel.force(true);
+  } // replaceBoard(AACMappings)
+
+  /**
+   * Escape the characters that separate fields and lines.
+   */
+  static String escape(String field) {
+    if (field.indexOf('\\') < 0 && field.indexOf('\t') < 0 && field.indexOf('\n') < 0) {
+      return field;
+    } // if
+    return field.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n");
+  } // escape(String)
+
+  /**
+   * Undo escape.
+   */
+  static String unescape(String field) {
+    if (field.indexOf('\\') < 0) {
+      return field;
+    } // if
+    StringBuilder str = new StringBuilder(field.length());
+    for (int i = 0; i < field.length(); i++) {
+      char c = field.charAt(i);
+      if (c == '\\' && i + 1 < field.length()) {
+        char next = field.charAt(++i);
+        str.append(next == 't' ? '\t' : next == 'n' ? '\n' : next);
+      } else {
+        str.append(c);
+      } // if/else
+    } // for
+    return str.toString();
+  } // unescape(String)
+} // class BoardJournal
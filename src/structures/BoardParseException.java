@@ -0,0 +1,59 @@
+package structures;
+
+/**
+ * Exceptions that indicate that a line of a board file could not be read.
+ *
+ * @author Joyce Gill
+ */
+public class BoardParseException extends Exception {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  private static final long serialVersionUID = 1L;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The file being read.
+   */
+  final String file;
+
+  /**
+   * The number of the bad line, counting from 1.
+   */
+  final int line;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new exception for line `line` of `file`.
+   */
+  public BoardParseException(String file, int line, String message) {
+    super(file + ":" + line + ": " + message);
+    this.file = file;
+    this.line = line;
+  } // BoardParseException(String, int, String)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * The file being read.
+   */
+  public String getFile() {
+    return this.file;
+  } // getFile()
+
+  /**
+   * The number of the bad line, counting from 1.
+   */
+  public int getLine() {
+    return this.line;
+  } // getLine()
+} // BoardParseException
@@ -0,0 +1,342 @@
+package structures;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A streaming reader for board files. Each line is an image location and
+ * its text, separated by the first space. Lines whose location starts with
+ * > are items of the most recent category; other lines start a category.
+ *
+ * The file is read through a FileChannel into one reusable buffer, and
+ * each line is split as raw UTF-8 bytes, so the only objects made per line
+ * are the two strings handed to the Handler. Bad lines are reported with
+ * their line numbers and, unless the reader is strict, skipped.
+ *
+ * @author Joyce Gill
+ */
+public class BoardReader {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The number of bytes read from the file at a time.
+   */
+  static final int BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * What to do with each line that is read.
+   */
+  public interface Handler {
+    /**
+     * Start a new top-level category.
+     */
+    void category(String imageLoc, String text);
+
+    /**
+     * Add an item to the most recent category.
+     */
+    void item(String imageLoc, String text);
+  } // interface Handler
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * Whether to stop at the first bad line rather than skip it.
+   */
+  final boolean strict;
+
+  /**
+   * The bad lines skipped by the last call to read.
+   */
+  final List<BoardParseException> errors = new ArrayList<BoardParseException>();
+
+  /**
+   * Decodes the lines that are not plain ASCII, reporting malformed bytes.
+   */
+  final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+      .onMalformedInput(CodingErrorAction.REPORT)
+      .onUnmappableCharacter(CodingErrorAction.REPORT);
+
+  /**
+   * The bytes of the line being read.
+   */
+  byte[] line = new byte[256];
+
+  /**
+   * The state of the read in progress: the board's name, the number of
+   * its first line and of the last line read, the length of the line
+   * being read, whether that line is plain ASCII so far, and the handler.
+   */
+  String name;
+  int firstLine;
+  int lineNo;
+  int len;
+  boolean ascii;
+  Handler handler;
+
+  /**
+   * The position in the file of the first byte handed to feed, and of the
+   * line being read.
+   */
+  long base;
+  long lineStart;
+
+  /**
+   * Whether to skip the items of categories without making strings for
+   * them, as when only the top level is wanted, and whether a category
+   * has been seen yet.
+   */
+  boolean skipItems;
+  boolean inCategory;
+
+  /**
+   * Whether to pass the strings through SymbolTable.share, which only
+   * strings that stay loaded should be.
+   */
+  boolean share = true;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a reader that skips bad lines.
+   */
+  public BoardReader() {
+    this(false);
+  } // BoardReader()
+
+  /**
+   * Create a reader that, if strict, stops at the first bad line.
+   */
+  public BoardReader(boolean strict) {
+    this.strict = strict;
+  } // BoardReader(boolean)
+
+  /**
+   * Create a reader that, if strict, stops at the first bad line and that,
+   * if skipItems, passes on only the top-level lines and the items that
+   * come before the first of them.
+   */
+  public BoardReader(boolean strict, boolean skipItems) {
+    this.strict = strict;
+    this.skipItems = skipItems;
+  } // BoardReader(boolean, boolean)
+
+  // +----------------+----------------------------------------------
+  // | Public Methods |
+  // +----------------+
+
+  /**
+   * Read file, passing each good line to handler, and return the number of
+   * lines read.
+   *
+   * @throws BoardParseException if the reader is strict and a line is bad.
+   */
+  public int read(Path file, Handler handler) throws IOException, BoardParseException {
+    this.begin(file.toString(), 1, handler);
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+      int n;
+      while ((n = channel.read(buffer)) >= 0) {
+        this.feed(buffer.array(), 0, n);
+        this.base += n;
+        buffer.clear();
+      } // while
+    } // try
+    return this.end();
+  } // read(Path, Handler)
+
+  /**
+   * Read the bytes from `from` up to `to`, which hold part of the board
+   * called name starting at line firstLine, passing each good line to
+   * handler, and return the number of lines read.
+   *
+   * @throws BoardParseException if the reader is strict and a line is bad.
+   */
+  public int read(String name, byte[] bytes, int from, int to, int firstLine, Handler handler)
+      throws BoardParseException {
+    this.begin(name, firstLine, handler);
+    this.lineStart = from;
+    this.feed(bytes, from, to);
+    return this.end();
+  } // read(String, byte[], int, int, int, Handler)
+
+  /**
+   * The position of the line being handled: its offset in the file, or
+   * in the array given to read.
+   */
+  public long offset() {
+    return this.lineStart;
+  } // offset()
+
+  /**
+   * The number of the line being handled.
+   */
+  public int line() {
+    return this.lineNo;
+  } // line()
+
+  /**
+   * The bad lines skipped by the last call to read.
+   */
+  public List<BoardParseException> errors() {
+    return this.errors;
+  } // errors()
+
+  // +-----------------+---------------------------------------------
+  // | Private Methods |
+  // +-----------------+
+
+  /**
+   * Get ready to read the board called name, starting at line firstLine.
+   */
+  void begin(String name, int firstLine, Handler handler) {
+    this.errors.clear();
+    this.name = name;
+    this.firstLine = firstLine;
+    this.lineNo = firstLine - 1;
+    this.len = 0;
+    this.ascii = true;
+    this.handler = handler;
+    this.base = 0;
+    this.lineStart = 0;
+    this.inCategory = false;
+  } // begin(String, int, Handler)
+
+  /**
+   * Read the bytes from `from` up to `to`, parsing each line as it ends.
+   */
+  void feed(byte[] bytes, int from, int to) throws BoardParseException {
+    for (int i = from; i < to; i++) {
+      byte b = bytes[i];
+      if (b == '\n') {
+        this.parse(this.name, ++this.lineNo, this.len, this.ascii, this.handler);
+        this.len = 0;
+        this.ascii = true;
+        this.lineStart = this.base + i + 1;
+      } else {
+        if (this.len == this.line.length) {
+          this.line = Arrays.copyOf(this.line, this.len * 2);
+        } // if
+        this.line[this.len++] = b;
+        this.ascii &= (b >= 0);
+      } // if/else
+    } // for
+  } // feed(byte[], int, int)
+
+  /**
+   * Parse the last line, if it has no newline, and return the number of
+   * lines read.
+   */
+  int end() throws BoardParseException {
+    if (this.len > 0) {
+      this.parse(this.name, ++this.lineNo, this.len, this.ascii, this.handler);
+      this.len = 0;
+    } // if
+    this.handler = null;
+    return this.lineNo - this.firstLine + 1;
+  } // end()
+
+  /**
+   * Split line number lineNo, held in the first len bytes of `line`, and
+   * pass it on to handler.
+   */
+  void parse(String name, int lineNo, int len, boolean ascii, Handler handler)
+      throws BoardParseException {
+    byte[] bytes = this.line;
+    int start = 0;
+    // Allow a byte order mark and Windows line endings
+    if (lineNo == 1 && len >= 3 && bytes[0] == (byte) 0xEF && bytes[1] == (byte) 0xBB
+        && bytes[2] == (byte) 0xBF) {
+      start = 3;
+    } // if
+    if (len > start && bytes[len - 1] == '\r') {
+      len--;
+    } // if
+    if (len == start) {
+      // Blank lines are allowed
+      return;
+    } // if
+
+    boolean isItem = (bytes[start] == '>');
+    if (isItem && this.skipItems && this.inCategory) {
+      return;
+    } // if
+    int locStart = isItem ? start + 1 : start;
+    int space = locStart;
+    while (space < len && bytes[space] != ' ') {
+      space++;
+    } // while
+    if (space == len) {
+      this.error(name, lineNo, "expected an image location, a space and the text");
+      return;
+    } // if
+    if (space == locStart) {
+      this.error(name, lineNo, "missing image location");
+      return;
+    } // if
+
+    String imageLoc;
+    String text;
+    if (ascii) {
+      // Plain ASCII copies straight into a compact string
+      imageLoc = new String(bytes, locStart, space - locStart, StandardCharsets.ISO_8859_1);
+      text = new String(bytes, space + 1, len - space - 1, StandardCharsets.ISO_8859_1);
+    } else {
+      try {
+        imageLoc = this.decode(bytes, locStart, space - locStart);
+        text = this.decode(bytes, space + 1, len - space - 1);
+      } catch (CharacterCodingException e) {
+        this.error(name, lineNo, "malformed UTF-8");
+        return;
+      } // try/catch
+    } // if/else
+
+    // Boards that share an icon library, and categories that repeat a word, share one copy
+    if (this.share) {
+      imageLoc = SymbolTable.share(imageLoc);
+      text = SymbolTable.share(text);
+    } // if
+    if (isItem) {
+      handler.item(imageLoc, text);
+    } else {
+      this.inCategory = true;
+      handler.category(imageLoc, text);
+    } // if/else
+  } // parse(String, int, int, boolean, Handler)
+
+  /**
+   * Decode len bytes of UTF-8, starting at offset.
+   */
+  String decode(byte[] bytes, int offset, int len) throws CharacterCodingException {
+    CharBuffer chars = this.decoder.reset().decode(ByteBuffer.wrap(bytes, offset, len));
+    return chars.toString();
+  } // decode(byte[], int, int)
+
+  /**
+   * Report a bad line: throw if strict, otherwise remember it.
+   */
+  void error(String name, int lineNo, String message) throws BoardParseException {
+    BoardParseException e = new BoardParseException(name, lineNo, message);
+    if (this.strict) {
+      throw e;
+    } // if
+    this.errors.add(e);
+  } // error(String, int, String)
+} // class BoardReader
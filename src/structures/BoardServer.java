@@ -0,0 +1,522 @@
+package structures;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.speech.freetts.Voice;
+import com.sun.speech.freetts.VoiceManager;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+/**
+ * Serves the boards in a directory over HTTP, for front ends that are not
+ * the Swing AAC, with no window at all.
+ *
+ * Each board is loaded once, the first time a session opens it, as
+ * concurrent AACMappings, and is shared by every session on it. A session
+ * keeps only its own place on the board, so thousands of them cost little,
+ * and a session left idle for SESSION_IDLE_MINUTES is closed. Requests are
+ * handled on virtual threads where the JDK has them (Java 21 and later),
+ * and otherwise on a fixed pool of platform threads.
+ *
+ * Every request is a GET, and every answer but /speak is JSON:
+ *
+ *   /open?board=B             start a session on board B: {"session":...}
+ *   /images?session=S         the images of the session's category
+ *   /tap?session=S&image=I    tap image I, opening it if it is a category
+ *   /home?session=S           go back to the top level
+ *   /close?session=S          end the session
+ *   /text?board=B&image=I     where image I is on board B and what it says
+ *   /speak?text=T             T as a WAV file, or
+ *   /speak?session=S&image=I  what image I says, as a WAV file
+ *
+ * Usage: java structures.BoardServer [directory] [port]
+ *
+ * @author Joyce Gill
+ */
+public class BoardServer {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The minutes after which an idle session is closed: the
+   * aac.sessionIdleMinutes property, or 30.
+   */
+  public static final long SESSION_IDLE_MINUTES = Long.getLong("aac.sessionIdleMinutes", 30);
+
+  /**
+   * The voice that speaks, and how many bytes of its audio stay in memory.
+   */
+  static final String VOICE = "kevin16";
+  static final long AUDIO_BUDGET = Long.getLong("aac.audioBudget", 64L << 20);
+
+  /**
+   * The names a board may have: a plain file name in the directory.
+   */
+  static final String BOARD_NAME = "[A-Za-z0-9_-][A-Za-z0-9._-]*";
+
+  /**
+   * The type of every answer but /speak.
+   */
+  static final String JSON = "application/json; charset=utf-8";
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The directory the boards are in.
+   */
+  final Path dir;
+
+  /**
+   * The server, and the threads that handle its requests.
+   */
+  final HttpServer server;
+  final ExecutorService handlers;
+
+  /**
+   * The boards loaded so far, by name, and the open sessions, by id.
+   */
+  final ConcurrentHashMap<String,AACMappings> boards = new ConcurrentHashMap<String,AACMappings>();
+  final ConcurrentHashMap<String,Session> sessions = new ConcurrentHashMap<String,Session>();
+
+  /**
+   * The audio for /speak, once the voice has loaded, or null if there is
+   * no voice.
+   */
+  final CompletableFuture<AudioCache> audio;
+
+  /**
+   * The thread that closes idle sessions.
+   */
+  final ScheduledExecutorService sweeper;
+
+  /**
+   * A client's place on a board.
+   */
+  static class Session {
+    final String board;
+    final AACMappings mappings;
+    volatile String categoryLoc = "";
+    volatile long lastUsed = System.nanoTime();
+
+    Session(String board, AACMappings mappings) {
+      this.board = board;
+      this.mappings = mappings;
+    } // Session(String, AACMappings)
+  } // class Session
+
+  /**
+   * A request that cannot be answered, and the HTTP status that says why.
+   */
+  static class Failure extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    final int status;
+
+    Failure(int status, String message) {
+      super(message);
+      this.status = status;
+    } // Failure(int, String)
+  } // class Failure
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Start serving the boards in dir on port (any free port, if 0), and
+   * start loading the voice.
+   */
+  public BoardServer(Path dir, int port) throws IOException {
+    this.dir = dir;
+    this.audio = CompletableFuture.supplyAsync(BoardServer::loadVoice, task -> {
+      Thread thread = new Thread(task, "voice-loader");
+      thread.setDaemon(true);
+      thread.start();
+    });
+    this.handlers = newExecutor();
+    this.server = HttpServer.create(new InetSocketAddress(port), 1024);
+    this.server.createContext("/", this::handle);
+    this.server.setExecutor(this.handlers);
+    this.server.start();
+    this.sweeper = Executors.newSingleThreadScheduledExecutor(task -> {
+      Thread thread = new Thread(task, "session-sweeper");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.sweeper.scheduleAtFixedRate(this::closeIdle, 1, 1, TimeUnit.MINUTES);
+  } // BoardServer(Path, int)
+
+  // +----------------+----------------------------------------------
+  // | Static Methods |
+  // +----------------+
+
+  /**
+   * Serve the boards in the directory args[0] (or the current one) on port
+   * args[1] (or 8080).
+   */
+  public static void main(String[] args) throws IOException {
+    Path dir = Paths.get(args.length > 0 ? args[0] : ".");
+    int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+    BoardServer server = new BoardServer(dir, port);
+    System.out.println("Serving the boards in " + dir.toAbsolutePath() + " on port "
+        + server.port() + ", " + server.handlerKind());
+  } // main(String[])
+
+  /**
+   * A virtual thread for each request where the JDK has them; otherwise
+   * a pool of the aac.serverThreads property (or four per processor)
+   * platform threads. Found by reflection, so the server still builds and
+   * runs on Java 17.
+   */
+  static ExecutorService newExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+          .invoke(null);
+    } catch (ReflectiveOperationException e) {
+      int threads = Integer.getInteger("aac.serverThreads",
+          4 * Runtime.getRuntime().availableProcessors());
+      AtomicInteger count = new AtomicInteger();
+      return Executors.newFixedThreadPool(threads, task -> {
+        Thread thread = new Thread(task, "board-server-" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      });
+    } // try/catch
+  } // newExecutor()
+
+  /**
+   * The cache that renders and keeps the audio for /speak, or null if the
+   * voice is not available.
+   */
+  static AudioCache loadVoice() {
+    System.setProperty("freetts.voices",
+        "com.sun.speech.freetts.en.us.cmu_us_kal.KevinVoiceDirectory");
+    try {
+      Voice voice = VoiceManager.getInstance().getVoice(VOICE);
+      if (voice == null) {
+        System.err.println("Error: no voice " + VOICE + ", so /speak is unavailable");
+        return null;
+      } // if
+      voice.allocate();
+      return new AudioCache(voice, AUDIO_BUDGET, null);
+    } catch (Exception | Error e) {
+      // VoiceManager reports a missing voice jar with an Error
+      System.err.println("Error: unable to load " + VOICE + ", so /speak is unavailable: " + e);
+      return null;
+    } // try/catch
+  } // loadVoice()
+
+  // +----------------+----------------------------------------------
+  // | Public Methods |
+  // +----------------+
+
+  /**
+   * The port the server listens on.
+   */
+  public int port() {
+    return this.server.getAddress().getPort();
+  } // port()
+
+  /**
+   * The number of open sessions.
+   */
+  public int sessionCount() {
+    return this.sessions.size();
+  } // sessionCount()
+
+  /**
+   * Stop serving, waiting up to a second for requests in progress.
+   */
+  public void close() {
+    this.server.stop(1);
+    this.handlers.shutdownNow();
+    this.sweeper.shutdownNow();
+    AudioCache cache = this.audio.getNow(null);
+    if (cache != null) {
+      cache.close();
+    } // if
+  } // close()
+
+  public String toString() {
+    return this.boards.size() + " boards, " + this.sessions.size() + " sessions, "
+        + this.handlerKind() + "; " + SymbolTable.SHARED;
+  } // toString()
+
+  // +-----------------+---------------------------------------------
+  // | Private Methods |
+  // +-----------------+
+
+  /**
+   * What kind of threads handle requests.
+   */
+  String handlerKind() {
+    return this.handlers.getClass().getSimpleName().contains("ThreadPerTask")
+        ? "virtual threads" : "platform threads";
+  } // handlerKind()
+
+  /**
+   * Answer one request.
+   */
+  void handle(HttpExchange exchange) throws IOException {
+    long start = Metrics.start();
+    try {
+      if (!exchange.getRequestMethod().equals("GET")) {
+        throw new Failure(405, "only GET is supported");
+      } // if
+      Map<String,String> query = query(exchange.getRequestURI().getRawQuery());
+      switch (exchange.getRequestURI().getPath()) {
+        case "/open":
+          this.open(exchange, query);
+          break;
+        case "/images":
+          this.images(exchange, query);
+          break;
+        case "/tap":
+          this.tap(exchange, query);
+          break;
+        case "/home":
+          this.session(query).categoryLoc = "";
+          this.send(exchange, 200, JSON, "{}");
+          break;
+        case "/close":
+          this.sessions.remove(param(query, "session"));
+          this.send(exchange, 200, JSON, "{}");
+          break;
+        case "/text":
+          this.text(exchange, query);
+          break;
+        case "/speak":
+          this.speak(exchange, query);
+          break;
+        default:
+          throw new Failure(404, "no such request");
+      } // switch
+    } catch (Failure e) {
+      this.send(exchange, e.status, JSON, "{\"error\":" + quote(e.getMessage()) + "}");
+    } catch (RuntimeException e) {
+      e.printStackTrace();
+      this.send(exchange, 500, JSON, "{\"error\":\"internal error\"}");
+    } finally {
+      exchange.close();
+      if (Metrics.ENABLED) {
+        Metrics.SERVE.recordSince(start);
+      } // if
+    } // try/catch/finally
+  } // handle(HttpExchange)
+
+  /**
+   * /open: start a session on a board.
+   */
+  void open(HttpExchange exchange, Map<String,String> query) throws IOException, Failure {
+    String name = param(query, "board");
+    Session session = new Session(name, this.board(name));
+    String id = UUID.randomUUID().toString();
+    this.sessions.put(id, session);
+    this.send(exchange, 200, JSON,
+        "{\"session\":" + quote(id) + ",\"board\":" + quote(name) + "}");
+  } // open(HttpExchange, Map<String,String>)
+
+  /**
+   * /images: the images of the session's category.
+   */
+  void images(HttpExchange exchange, Map<String,String> query) throws IOException, Failure {
+    Session session = this.session(query);
+    String loc = session.categoryLoc;
+    StringBuilder json = new StringBuilder("{\"category\":").append(quote(loc))
+        .append(",\"images\":[");
+    String[] images = session.mappings.getImageLocs(loc);
+    for (int i = 0; i < images.length; i++) {
+      json.append((i == 0) ? "" : ",").append(quote(images[i]));
+    } // for
+    this.send(exchange, 200, JSON, json.append("]}").toString());
+  } // images(HttpExchange, Map<String,String>)
+
+  /**
+   * /tap: the text of an image in the session's category, opening it if it
+   * is a category.
+   */
+  void tap(HttpExchange exchange, Map<String,String> query) throws IOException, Failure {
+    Session session = this.session(query);
+    String image = param(query, "image");
+    String loc = session.categoryLoc;
+    String text = session.mappings.getText(loc, image);
+    if (text == null) {
+      throw new Failure(404, "no such image here");
+    } // if
+    boolean opened = loc.equals("") && session.mappings.isCategory(image);
+    if (opened) {
+      session.categoryLoc = image;
+    } // if
+    this.send(exchange, 200, JSON, "{\"text\":" + quote(text)
+        + ",\"opened\":" + opened + ",\"category\":" + quote(session.categoryLoc) + "}");
+  } // tap(HttpExchange, Map<String,String>)
+
+  /**
+   * /text: where an image is on a board and what it says, without a
+   * session.
+   */
+  void text(HttpExchange exchange, Map<String,String> query) throws IOException, Failure {
+    AACMappings mappings = this.board(param(query, "board"));
+    String image = param(query, "image");
+    String text = mappings.textOf(image);
+    if (text == null) {
+      throw new Failure(404, "no such image on the board");
+    } // if
+    this.send(exchange, 200, JSON, "{\"text\":" + quote(text)
+        + ",\"category\":" + quote(mappings.categoryOf(image)) + "}");
+  } // text(HttpExchange, Map<String,String>)
+
+  /**
+   * /speak: a text, or the text of an image, as a WAV file.
+   */
+  void speak(HttpExchange exchange, Map<String,String> query) throws IOException, Failure {
+    String text = query.get("text");
+    if (text == null) {
+      Session session = this.session(query);
+      String image = param(query, "image");
+      text = session.mappings.getText(session.categoryLoc, image);
+      if (text == null) {
+        text = session.mappings.textOf(image);
+      } // if
+      if (text == null) {
+        throw new Failure(404, "no such image on the board");
+      } // if
+    } // if
+    if (!this.audio.isDone()) {
+      throw new Failure(503, "the voice is still loading");
+    } // if
+    AudioCache cache = this.audio.join();
+    if (cache == null) {
+      throw new Failure(503, "there is no voice");
+    } // if
+    AudioCache.Clip clip = cache.clip(text);
+    ByteArrayOutputStream wav = new ByteArrayOutputStream(clip.pcm.length + 64);
+    AudioSystem.write(new AudioInputStream(new ByteArrayInputStream(clip.pcm), clip.format,
+        clip.pcm.length / clip.format.getFrameSize()), AudioFileFormat.Type.WAVE, wav);
+    this.send(exchange, 200, "audio/wav", wav.toByteArray());
+  } // speak(HttpExchange, Map<String,String>)
+
+  /**
+   * The board called name, loading it the first time it is asked for.
+   */
+  AACMappings board(String name) throws Failure {
+    if (!name.matches(BOARD_NAME)) {
+      throw new Failure(400, "bad board name");
+    } // if
+    AACMappings mappings = this.boards.get(name);
+    if (mappings != null) {
+      return mappings;
+    } // if
+    Path path = this.dir.resolve(name);
+    if (!Files.isRegularFile(path)) {
+      throw new Failure(404, "no such board");
+    } // if
+    return this.boards.computeIfAbsent(name, key -> new AACMappings(path.toString(), true));
+  } // board(String)
+
+  /**
+   * The session named in query, which is used now.
+   */
+  Session session(Map<String,String> query) throws Failure {
+    Session session = this.sessions.get(param(query, "session"));
+    if (session == null) {
+      throw new Failure(404, "no such session");
+    } // if
+    session.lastUsed = System.nanoTime();
+    return session;
+  } // session(Map<String,String>)
+
+  /**
+   * Close the sessions that have been idle too long.
+   */
+  void closeIdle() {
+    long cutoff = System.nanoTime() - TimeUnit.MINUTES.toNanos(SESSION_IDLE_MINUTES);
+    this.sessions.values().removeIf(session -> session.lastUsed - cutoff < 0);
+  } // closeIdle()
+
+  /**
+   * The parameters of a query string.
+   */
+  static Map<String,String> query(String raw) {
+    HashMap<String,String> params = new HashMap<String,String>();
+    if (raw == null) {
+      return params;
+    } // if
+    for (String pair : raw.split("&")) {
+      int eq = pair.indexOf('=');
+      if (eq > 0) {
+        params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+            URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+      } // if
+    } // for
+    return params;
+  } // query(String)
+
+  /**
+   * The parameter name of query, which must be there.
+   */
+  static String param(Map<String,String> query, String name) throws Failure {
+    String value = query.get(name);
+    if (value == null) {
+      throw new Failure(400, "missing " + name);
+    } // if
+    return value;
+  } // param(Map<String,String>, String)
+
+  /**
+   * text as a JSON string.
+   */
+  static String quote(String text) {
+    StringBuilder json = new StringBuilder(text.length() + 2).append('"');
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c == '"' || c == '\\') {
+        json.append('\\').append(c);
+      } else if (c < ' ') {
+        json.append(String.format("\\u%04x", (int) c));
+      } else {
+        json.append(c);
+      } // if/else
+    } // for
+    return json.append('"').toString();
+  } // quote(String)
+
+  /**
+   * Send body as the response.
+   */
+  void send(HttpExchange exchange, int status, String type, String body) throws IOException {
+    this.send(exchange, status, type, body.getBytes(StandardCharsets.UTF_8));
+  } // send(HttpExchange, int, String, String)
+
+  void send(HttpExchange exchange, int status, String type, byte[] body) throws IOException {
+    exchange.getResponseHeaders().set("Content-Type", type);
+    exchange.sendResponseHeaders(status, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    } // try
+  } // send(HttpExchange, int, String, byte[])
+} // class BoardServer
@@ -0,0 +1,451 @@
+package structures;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Watches a text board for changes made while the AAC is running and
+ * applies them to its AACMappings.
+ *
+ * Editors tend to write a file in several steps, so the watcher waits
+ * until the file has been quiet for DEBOUNCE_MS before reading it. The
+ * board is then split into category blocks (a top-level line and the >
+ * lines after it) and each block is checksummed. Only the blocks whose
+ * checksums changed are parsed; the categories of the others are kept as
+ * they are, along with anything added to them since.
+ *
+ * @author Joyce Gill
+ */
+public class BoardWatcher {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * How long the board must go unchanged before it is read.
+   */
+  public static final long DEBOUNCE_MS = 300;
+
+  /**
+   * The changes between two versions of a board.
+   */
+  public static class Diff {
+    /**
+     * The top-level images whose categories were added, removed, or
+     * changed.
+     */
+    public final List<String> added = new ArrayList<String>();
+    public final List<String> removed = new ArrayList<String>();
+    public final List<String> changed = new ArrayList<String>();
+
+    /**
+     * Whether the top level itself (its images, texts, or order) changed.
+     */
+    public boolean topLevelChanged;
+
+    /**
+     * Whether the category being shown changed, set when the diff is
+     * applied.
+     */
+    boolean currentChanged;
+
+    /**
+     * The new top level, and the categories of the added and changed
+     * images.
+     */
+    AACCategory topLevel;
+    AssociativeArray<String,AACCategory> categories =
+        new AssociativeArray<String,AACCategory>();
+
+    /**
+     * Determine whether nothing changed.
+     */
+    public boolean isEmpty() {
+      return !this.topLevelChanged && this.added.isEmpty() && this.removed.isEmpty()
+          && this.changed.isEmpty();
+    } // isEmpty()
+
+    /**
+     * Determine whether the category that was being shown when the diff
+     * was applied changed, or was removed.
+     */
+    public boolean affectsCurrent() {
+      return this.currentChanged;
+    } // affectsCurrent()
+
+    public String toString() {
+      return "added " + this.added + ", removed " + this.removed + ", changed "
+          + this.changed + (this.topLevelChanged ? ", top level changed" : "");
+    } // toString()
+  } // class Diff
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The mappings to update and the board they were loaded from.
+   */
+  final AACMappings mappings;
+  final Path board;
+
+  /**
+   * Where to apply each diff (such as the Swing event thread), and whom
+   * to tell afterwards.
+   */
+  final Executor applyOn;
+  final Consumer<Diff> listener;
+
+  /**
+   * The checksum of each category block as the board was last read.
+   */
+  AssociativeArray<String,Long> checksums = new AssociativeArray<String,Long>();
+
+  /**
+   * Reads the top-level lines and the changed blocks.
+   */
+  final BoardReader reader = new BoardReader();
+
+  /**
+   * Whether to report bad lines, which the first read leaves to
+   * AACMappings.
+   */
+  boolean report;
+
+  /**
+   * The watch on the board's directory, and the thread that waits on it.
+   */
+  final WatchService service;
+  final Thread thread;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Start watching board, which mappings were loaded from. Each diff is
+   * applied by a task given to applyOn, which then passes it to listener.
+   */
+  public BoardWatcher(AACMappings mappings, Path board, Executor applyOn,
+      Consumer<Diff> listener) throws IOException {
+    this.mappings = mappings;
+    this.board = board.toAbsolutePath();
+    this.applyOn = applyOn;
+    this.listener = listener;
+    try {
+      this.scan(Files.readAllBytes(this.board), false);
+    } catch (NoSuchFileException e) {
+      // Watch for it to be created
+    } // try/catch
+    this.service = FileSystems.getDefault().newWatchService();
+    this.board.getParent().register(this.service, StandardWatchEventKinds.ENTRY_CREATE,
+        StandardWatchEventKinds.ENTRY_MODIFY);
+    this.thread = new Thread(this::run, "board-watcher");
+    this.thread.setDaemon(true);
+    this.thread.start();
+  } // BoardWatcher(AACMappings, Path, Executor, Consumer<Diff>)
+
+  // +----------------+----------------------------------------------
+  // | Public Methods |
+  // +----------------+
+
+  /**
+   * Stop watching.
+   */
+  public void close() throws IOException {
+    this.service.close();
+  } // close()
+
+  // +-----------------+---------------------------------------------
+  // | Private Methods |
+  // +-----------------+
+
+  /**
+   * The body of the watcher thread: wait for the board to change and to
+   * settle, then read it.
+   */
+  void run() {
+    try {
+      while (true) {
+        WatchKey key = this.service.take();
+        boolean touched = this.touched(key);
+        // Debounce: keep waiting while the file is still being written
+        while (touched) {
+          key = this.service.poll(DEBOUNCE_MS, TimeUnit.MILLISECONDS);
+          if (key == null) {
+            break;
+          } // if
+          this.touched(key);
+        } // while
+        if (touched) {
+          this.reload();
+        } // if
+      } // while
+    } catch (InterruptedException | ClosedWatchServiceException e) {
+      // Stopped
+    } // try/catch
+  } // run()
+
+  /**
+   * Determine whether the events of key concern the board, and re-arm it.
+   */
+  boolean touched(WatchKey key) {
+    boolean touched = false;
+    for (WatchEvent<?> event : key.pollEvents()) {
+      Object context = event.context();
+      touched |= (event.kind() == StandardWatchEventKinds.OVERFLOW)
+          || this.board.getFileName().equals(context);
+    } // for
+    key.reset();
+    return touched;
+  } // touched(WatchKey)
+
+  /**
+   * Read the board and hand the changes to applyOn.
+   */
+  void reload() {
+    byte[] bytes;
+    try {
+      if (this.writtenByJournal()) {
+        // Our own compaction: the blocks changed, but the mappings did not
+        this.scan(Files.readAllBytes(this.board), false);
+        return;
+      } // if
+      bytes = Files.readAllBytes(this.board);
+    } catch (IOException e) {
+      System.err.println("Error: unable to reload " + this.board + ": " + e.getMessage());
+      return;
+    } // try/catch
+    Diff diff = this.scan(bytes, true);
+    this.applyOn.execute(() -> {
+      this.keepUnsaved(diff);
+      // The top level changes on this thread, so it is compared here
+      diff.topLevelChanged = !sameItems(this.mappings.topLevel, diff.topLevel);
+      if (diff.isEmpty()) {
+        return;
+      } // if
+      this.mappings.apply(diff);
+      this.listener.accept(diff);
+    });
+  } // reload()
+
+  /**
+   * Add the changes that are journaled but not yet in the board file to
+   * the new top level and categories of diff, which were read from the
+   * file, so that applying diff does not lose them. Changes to categories
+   * that the edit removed are dropped. Called on applyOn.
+   */
+  void keepUnsaved(Diff diff) {
+    BoardJournal journal = this.mappings.journal;
+    if (journal == null) {
+      return;
+    } // if
+    for (String[] change : journal.unsaved()) {
+      String categoryLoc = change[0];
+      if (categoryLoc.isEmpty()) {
+        if (!diff.removed.contains(change[1])) {
+          diff.topLevel.addItem(change[1], change[2]);
+        } // if
+      } else if (!diff.removed.contains(categoryLoc)) {
+        AACCategory category = diff.categories.getOrDefault(categoryLoc, null);
+        if (category != null) {
+          // Categories that the edit left alone still hold the change
+          category.addItem(change[1], change[2]);
+        } // if
+      } // if/else
+    } // for
+  } // keepUnsaved(Diff)
+
+  /**
+   * Determine whether the board was last written by the mappings' journal.
+   */
+  boolean writtenByJournal() throws IOException {
+    BoardJournal journal = this.mappings.journal;
+    if (journal == null || journal.lastCompacted == null) {
+      return false;
+    } // if
+    FileTime modified = Files.getLastModifiedTime(this.board);
+    return modified.equals(journal.lastCompacted);
+  } // writtenByJournal()
+
+  /**
+   * Split bytes into category blocks, checksum them, and remember the
+   * checksums. When diff is true, also work out how the categories of the
+   * board differ from the mappings, parsing only the blocks that changed,
+   * and read the new top level, which is compared on applyOn.
+   */
+  Diff scan(byte[] bytes, boolean diff) {
+    String name = this.board.toString();
+    this.report = diff;
+    Diff result = new Diff();
+    AssociativeArray<String,Long> sums = new AssociativeArray<String,Long>(this.checksums.size());
+    ArrayList<String> topLocs = new ArrayList<String>();
+    ArrayList<String> topTexts = new ArrayList<String>();
+    ArrayList<String> locs = new ArrayList<String>();
+    ArrayList<String> texts = new ArrayList<String>();
+    BoardReader.Handler top = new BoardReader.Handler() {
+      public void category(String imageLoc, String text) {
+        topLocs.add(imageLoc);
+        topTexts.add(text);
+      } // category(String, String)
+
+      public void item(String imageLoc, String text) {
+        // Items before the first category belong to the top level
+        topLocs.add(imageLoc);
+        topTexts.add(text);
+      } // item(String, String)
+    };
+    BoardReader.Handler items = new BoardReader.Handler() {
+      public void category(String imageLoc, String text) {
+      } // category(String, String)
+
+      public void item(String imageLoc, String text) {
+        locs.add(imageLoc);
+        texts.add(text);
+      } // item(String, String)
+    };
+
+    // Find the blocks: each starts with a line that does not start with >
+    int lineNo = 0;
+    String blockLoc = null;
+    String blockText = null;
+    int blockStart = -1;
+    int blockLine = 0;
+    int bodyStart = 0;
+    int pos = 0;
+    CRC32 crc = new CRC32();
+    while (pos <= bytes.length) {
+      int eol = pos;
+      while (eol < bytes.length && bytes[eol] != '\n') {
+        eol++;
+      } // while
+      lineNo++;
+      int first = pos;
+      if (lineNo == 1 && bytes.length >= 3 && bytes[0] == (byte) 0xEF
+          && bytes[1] == (byte) 0xBB && bytes[2] == (byte) 0xBF) {
+        first = 3;
+      } // if
+      boolean blank = (first == eol) || (first + 1 == eol && bytes[first] == '\r');
+      boolean header = !blank && bytes[first] != '>';
+      boolean last = (eol >= bytes.length);
+      if (header || last) {
+        int blockEnd = header ? pos : bytes.length;
+        if (blockStart < 0) {
+          // The lines before the first category
+          this.read(name, bytes, 0, blockEnd, 1, top);
+        } else {
+          this.block(name, bytes, blockLoc, blockText, blockStart, bodyStart, blockEnd,
+              blockLine, crc, sums, diff ? result : null, items, locs, texts);
+        } // if/else
+        if (header) {
+          blockStart = pos;
+          blockLine = lineNo;
+          bodyStart = Math.min(eol + 1, bytes.length);
+          int before = topLocs.size();
+          this.read(name, bytes, pos, bodyStart, lineNo, top);
+          // A bad top-level line leaves its block without a category
+          blockLoc = (topLocs.size() > before) ? topLocs.get(before) : null;
+          blockText = (topLocs.size() > before) ? topTexts.get(before) : null;
+        } // if
+        if (last && header) {
+          this.block(name, bytes, blockLoc, blockText, blockStart, bodyStart, bytes.length,
+              blockLine, crc, sums, diff ? result : null, items, locs, texts);
+        } // if
+      } // if
+      pos = eol + 1;
+    } // while
+
+    if (diff) {
+      for (Map.Entry<String,Long> old : this.checksums.entries()) {
+        if (!sums.hasKey(old.getKey())) {
+          result.removed.add(old.getKey());
+        } // if
+      } // for
+      result.topLevel = this.mappings.newCategory("");
+      result.topLevel.addItems(topLocs.toArray(new String[topLocs.size()]),
+          topTexts.toArray(new String[topTexts.size()]));
+    } // if
+    this.checksums = sums;
+    return result;
+  } // scan(byte[], boolean)
+
+  /**
+   * Checksum the block from blockStart to blockEnd, which belongs to the
+   * top-level image loc, and, if it changed and diff is not null, parse
+   * its items into a new category called text for diff.
+   */
+  void block(String name, byte[] bytes, String loc, String text, int blockStart,
+      int bodyStart, int blockEnd, int blockLine, CRC32 crc, AssociativeArray<String,Long> sums,
+      Diff diff, BoardReader.Handler items, ArrayList<String> locs, ArrayList<String> texts) {
+    if (loc == null) {
+      return;
+    } // if
+    crc.reset();
+    crc.update(bytes, blockStart, blockEnd - blockStart);
+    long sum = crc.getValue();
+    sums.set(loc, sum);
+    if (diff == null) {
+      return;
+    } // if
+    Long old = this.checksums.getOrDefault(loc, null);
+    if (old != null && old == sum) {
+      return;
+    } // if
+    this.read(name, bytes, bodyStart, blockEnd, blockLine + 1, items);
+    AACCategory category = this.mappings.newCategory(text);
+    AACMappings.addBatch(category, locs, texts);
+    diff.categories.set(loc, category);
+    (old == null ? diff.added : diff.changed).add(loc);
+  } // block(...)
+
+  /**
+   * Pass the lines from `from` up to `to` to handler, reporting bad ones.
+   */
+  void read(String name, byte[] bytes, int from, int to, int firstLine,
+      BoardReader.Handler handler) {
+    try {
+      this.reader.read(name, bytes, from, to, firstLine, handler);
+    } catch (BoardParseException e) {
+      // Only a strict reader throws, and this one skips bad lines
+    } // try/catch
+    if (this.report) {
+      for (BoardParseException e : this.reader.errors()) {
+        System.err.println("Error: " + e.getMessage());
+      } // for
+    } // if
+  } // read(String, byte[], int, int, int, BoardReader.Handler)
+
+  /**
+   * Determine whether two categories hold the same items in the same order.
+   */
+  static boolean sameItems(AACCategory a, AACCategory b) {
+    ArrayList<Map.Entry<String,String>> left = new ArrayList<Map.Entry<String,String>>(a.items());
+    ArrayList<Map.Entry<String,String>> right = new ArrayList<Map.Entry<String,String>>(b.items());
+    if (left.size() != right.size()) {
+      return false;
+    } // if
+    for (int i = 0; i < left.size(); i++) {
+      if (!left.get(i).getKey().equals(right.get(i).getKey())
+          || !left.get(i).getValue().equals(right.get(i).getValue())) {
+        return false;
+      } // if
+    } // for
+    return true;
+  } // sameItems(AACCategory, AACCategory)
+} // class BoardWatcher
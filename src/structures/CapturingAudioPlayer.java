@@ -0,0 +1,101 @@
+package structures;
+
+import com.sun.speech.freetts.audio.AudioPlayer;
+import java.io.ByteArrayOutputStream;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * A FreeTTS audio player that keeps the audio it is given in memory, in
+ * the manner of SingleFileAudioPlayer, instead of playing it.
+ *
+ * @author Joyce Gill
+ */
+public class CapturingAudioPlayer implements AudioPlayer {
+  /* Fields */
+  AudioFormat format = new AudioFormat(8000f, 16, 1, true, true);
+  final ByteArrayOutputStream pcm = new ByteArrayOutputStream();
+  float volume = 1.0f;
+  boolean cancelled;
+
+  /* Takes the audio captured so far, leaving the player empty */
+  public synchronized byte[] take() {
+    byte[] bytes = this.pcm.toByteArray();
+    this.pcm.reset();
+    this.cancelled = false;
+    return bytes;
+  } // take()
+
+  public synchronized void setAudioFormat(AudioFormat format) {
+    this.format = format;
+  } // setAudioFormat(AudioFormat)
+
+  public AudioFormat getAudioFormat() {
+    return this.format;
+  } // getAudioFormat()
+
+  public void pause() {
+  } // pause()
+
+  public void resume() {
+  } // resume()
+
+  public synchronized void reset() {
+    this.pcm.reset();
+    this.cancelled = false;
+  } // reset()
+
+  public boolean drain() {
+    return true;
+  } // drain()
+
+  public void begin(int size) {
+  } // begin(int)
+
+  public synchronized boolean end() {
+    return !this.cancelled;
+  } // end()
+
+  public synchronized void cancel() {
+    this.cancelled = true;
+  } // cancel()
+
+  public void close() {
+  } // close()
+
+  public float getVolume() {
+    return this.volume;
+  } // getVolume()
+
+  public void setVolume(float volume) {
+    this.volume = volume;
+  } // setVolume(float)
+
+  public long getTime() {
+    return 0;
+  } // getTime()
+
+  public void resetTime() {
+  } // resetTime()
+
+  public void startFirstSampleTimer() {
+  } // startFirstSampleTimer()
+
+  public boolean write(byte[] audioData) {
+    return this.write(audioData, 0, audioData.length);
+  } // write(byte[])
+
+  public synchronized boolean write(byte[] audioData, int offset, int size) {
+    if (this.cancelled) {
+      return false;
+    } // if
+    this.pcm.write(audioData, offset, size);
+    return true;
+  } // write(byte[], int, int)
+
+  public void showMetrics() {
+  } // showMetrics()
+
+  public String toString() {
+    return "CapturingAudioPlayer";
+  } // toString()
+} // class CapturingAudioPlayer
@@ -0,0 +1,52 @@
+package structures;
+
+import java.io.IOException;
+
+/**
+ * Somewhere AACMappings can find categories that it has not loaded yet.
+ *
+ * @author Joyce Gill
+ */
+interface CategorySource {
+  /**
+   * The category behind the top-level image imageLoc, or null if there is
+   * none.
+   */
+  AACCategory category(String imageLoc);
+
+  /**
+   * The category behind imageLoc, or null, to be read once and dropped,
+   * so that a source that caches categories need not cache it.
+   */
+  default AACCategory peek(String imageLoc) {
+    return this.category(imageLoc);
+  } // peek(String)
+
+  /**
+   * The category that holds the top-level images.
+   */
+  AACCategory topLevel();
+
+  /**
+   * Whether the source keeps the categories it hands out, along with any
+   * changes made to them. If not, AACMappings keeps them instead.
+   */
+  default boolean keepsChanges() {
+    return false;
+  } // keepsChanges()
+
+  /**
+   * A copy of the source that later changes to its categories do not
+   * affect.
+   */
+  default CategorySource snapshot() {
+    return this;
+  } // snapshot()
+
+  /**
+   * Release whatever the source holds open, such as the file it reads
+   * categories from.
+   */
+  default void close() throws IOException {
+  } // close()
+} // interface CategorySource
@@ -0,0 +1,522 @@
+package structures;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A thread-safe associative array for boards that are read far more often
+ * than they are written, such as a board that the Swing event thread reads
+ * while background threads load, edit and save it.
+ *
+ * The contents live in an immutable State: the pairs in insertion order,
+ * in a PairVector, and the position of each key, in a HashTrie. Reads go
+ * straight to the current state, so they never lock or wait. Writes build
+ * a new state that shares all but the few nodes on the changed paths, and
+ * publish it with a compare-and-set, retrying if another writer got there
+ * first. A write therefore costs O(log n) with a base of 32, which is a
+ * handful of small copies even for a million pairs; setAll applies a batch
+ * under one edit token, so that it copies each node at most once.
+ *
+ * Removing a pair leaves a hole in the vector. Once there are more holes
+ * than pairs, the next remove squeezes them out, which costs O(n) but
+ * comes only after n removes.
+ *
+ * Views and iterators read the state that was current when they were
+ * created. They never throw ConcurrentModificationException and never see
+ * a half-applied write.
+ *
+ * @author Joyce Gill
+ */
+public class ConcurrentAssociativeArray<K, V> extends AssociativeArray<K, V> {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The fewest holes worth squeezing out.
+   */
+  static final int COMPACT_AT = PairVector.WIDTH;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The current state.
+   */
+  final AtomicReference<State<K, V>> state;
+
+  /**
+   * The contents at one moment, which never change: the pairs, with holes,
+   * the root of the trie of their positions, and the number of pairs.
+   */
+  static final class State<K, V> {
+    final PairVector<K, V> pairs;
+    final Object keys;
+    final int size;
+
+    State(PairVector<K, V> pairs, Object keys, int size) {
+      this.pairs = pairs;
+      this.keys = keys;
+      this.size = size;
+    } // State(PairVector, Object, int)
+
+    /**
+     * The position of key, or -1.
+     */
+    int indexOf(Object key) {
+      return HashTrie.find(this.keys, key, hash(key));
+    } // indexOf(Object)
+
+    /**
+     * This state with key set to value.
+     */
+    State<K, V> set(K key, V value, Object edit) {
+      int hash = hash(key);
+      int idx = HashTrie.find(this.keys, key, hash);
+      KVPair<K, V> pair = new KVPair<K, V>(key, value);
+      if (idx >= 0) {
+        return new State<K, V>(this.pairs.set(idx, pair, edit), this.keys, this.size);
+      } // if
+      HashTrie.Leaf leaf = new HashTrie.Leaf(key, hash, this.pairs.count);
+      return new State<K, V>(this.pairs.append(pair, edit), HashTrie.put(this.keys, leaf, edit),
+          this.size + 1);
+    } // set(K, V, Object)
+
+    /**
+     * This state without key, squeezing out the holes if there are many.
+     */
+    State<K, V> remove(K key, Object edit) {
+      int hash = hash(key);
+      int idx = HashTrie.find(this.keys, key, hash);
+      if (idx < 0) {
+        return this;
+      } // if
+      State<K, V> next = new State<K, V>(this.pairs.set(idx, null, edit),
+          HashTrie.remove(this.keys, key, hash, edit), this.size - 1);
+      int holes = next.pairs.count - next.size;
+      if (holes >= COMPACT_AT && holes > next.size) {
+        return next.compact();
+      } // if
+      return next;
+    } // remove(K, Object)
+
+    /**
+     * The same pairs, in the same order, without holes.
+     */
+    State<K, V> compact() {
+      Object edit = new Object();
+      State<K, V> fresh = new State<K, V>(new PairVector<K, V>(), null, 0);
+      Walk<K, V> walk = new Walk<K, V>(this.pairs);
+      for (int i = 0; i < this.pairs.count; i++) {
+        KVPair<K, V> pair = walk.at(i);
+        if (pair != null) {
+          fresh = fresh.set(pair.key, pair.value, edit);
+        } // if
+      } // for
+      return fresh;
+    } // compact()
+  } // class State
+
+  /**
+   * A walk over the positions of a vector, which descends the tree once
+   * for each node of pairs rather than once for each pair.
+   */
+  static final class Walk<K, V> {
+    final PairVector<K, V> pairs;
+    Object[] leaf;
+    int base = -1;
+
+    Walk(PairVector<K, V> pairs) {
+      this.pairs = pairs;
+    } // Walk(PairVector)
+
+    @SuppressWarnings({"unchecked"})
+    KVPair<K, V> at(int i) {
+      int base = i & ~PairVector.MASK;
+      if (base != this.base) {
+        this.leaf = this.pairs.leaf(i);
+        this.base = base;
+      } // if
+      return (KVPair<K, V>) this.leaf[i & PairVector.MASK];
+    } // at(int)
+  } // class Walk
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new, empty concurrent associative array.
+   */
+  public ConcurrentAssociativeArray() {
+    this(new State<K, V>(new PairVector<K, V>(), null, 0), false);
+  } // ConcurrentAssociativeArray()
+
+  /**
+   * Create an array that starts from state, and that throws on every
+   * change if readOnly.
+   */
+  ConcurrentAssociativeArray(State<K, V> state, boolean readOnly) {
+    // The inherited storage is never used, so keep it empty.
+    super(0);
+    this.state = new AtomicReference<State<K, V>>(state);
+    this.readOnly = readOnly;
+  } // ConcurrentAssociativeArray(State, boolean)
+
+  // +------------------+--------------------------------------------
+  // | Standard Methods |
+  // +------------------+
+
+  /**
+   * Create a copy of this associative array, which is also concurrent.
+   * The copy shares the current state, so this takes constant time.
+   */
+  public ConcurrentAssociativeArray<K, V> clone() {
+    return new ConcurrentAssociativeArray<K, V>(this.state.get(), false);
+  } // clone()
+
+  /**
+   * A read-only copy that shares the current state, in constant time.
+   */
+  public AssociativeArray<K, V> snapshot() {
+    return new ConcurrentAssociativeArray<K, V>(this.state.get(), true);
+  } // snapshot()
+
+  /**
+   * Convert the current state to a string.
+   */
+  public String toString() {
+    State<K, V> current = this.state.get();
+    if (current.size == 0) {
+      return "{}";
+    } // if
+    StringBuilder str = new StringBuilder("{ ");
+    int seen = 0;
+    Walk<K, V> walk = new Walk<K, V>(current.pairs);
+    for (int i = 0; i < current.pairs.count; i++) {
+      KVPair<K, V> pair = walk.at(i);
+      if (pair == null) {
+        continue;
+      } // if
+      str.append(pair.key).append(": ").append(pair.value);
+      str.append((++seen < current.size) ? ", " : " ");
+    } // for
+    return str.append("}").toString();
+  } // toString()
+
+  // +-------+-------------------------------------------------------
+  // | Reads |
+  // +-------+
+
+  public V get(K key) throws KeyNotFoundException {
+    long start = Metrics.start();
+    State<K, V> current = this.state.get();
+    int idx = current.indexOf(key);
+    if (Metrics.ENABLED) {
+      Metrics.GET.recordSince(start);
+    } // if
+    if (idx < 0) {
+      throw new KeyNotFoundException();
+    } // if
+    return current.pairs.get(idx).value;
+  } // get(K)
+
+  public V getOrDefault(K key, V defaultValue) {
+    long start = Metrics.start();
+    State<K, V> current = this.state.get();
+    int idx = current.indexOf(key);
+    if (Metrics.ENABLED) {
+      Metrics.GET.recordSince(start);
+    } // if
+    return (idx < 0) ? defaultValue : current.pairs.get(idx).value;
+  } // getOrDefault(K, V)
+
+  public boolean hasKey(K key) {
+    return this.state.get().indexOf(key) >= 0;
+  } // hasKey(K)
+
+  /**
+   * Find the position of key in the current state, or -1. The position
+   * is only meaningful for that state.
+   */
+  public int indexOf(K key) {
+    return this.state.get().indexOf(key);
+  } // indexOf(K)
+
+  public int find(K key) throws KeyNotFoundException {
+    long start = Metrics.start();
+    int idx = this.state.get().indexOf(key);
+    if (Metrics.ENABLED) {
+      Metrics.FIND.recordSince(start);
+    } // if
+    if (idx < 0) {
+      throw new KeyNotFoundException();
+    } // if
+    return idx;
+  } // find(K)
+
+  public int size() {
+    return this.state.get().size;
+  } // size()
+
+  @SuppressWarnings({"unchecked"})
+  public K[] getKeys() {
+    State<K, V> current = this.state.get();
+    if (current.size == 0) {
+      return null;
+    } // if
+    Class<?> type = Object.class;
+    for (K key : this.keys(current)) {
+      if (key != null) {
+        type = key.getClass();
+        break;
+      } // if
+    } // for
+    return this.keys(current).toArray((K[]) java.lang.reflect.Array.newInstance(type,
+        current.size));
+  } // getKeys()
+
+  /**
+   * The keys of the current state. Later writes do not show up in it.
+   */
+  public Collection<K> keys() {
+    return this.keys(this.state.get());
+  } // keys()
+
+  /**
+   * The values of the current state. Later writes do not show up in it.
+   */
+  public Collection<V> values() {
+    return new StateView<K, V, V>(this.state.get(), pair -> pair.value);
+  } // values()
+
+  /**
+   * The pairs of the current state. Later writes do not show up in it.
+   */
+  public Collection<Map.Entry<K, V>> entries() {
+    return new StateView<K, V, Map.Entry<K, V>>(this.state.get(), pair -> pair);
+  } // entries()
+
+  // +--------+------------------------------------------------------
+  // | Writes |
+  // +--------+
+
+  public void set(K key, V value) {
+    long start = Metrics.start();
+    this.update((current, edit) -> current.set(key, value, edit));
+    if (Metrics.ENABLED) {
+      Metrics.SET.recordSince(start);
+    } // if
+  } // set(K, V)
+
+  public void setAll(K[] keys, V[] values) {
+    if (keys.length != values.length) {
+      throw new IllegalArgumentException("keys and values differ in length");
+    } // if
+    this.update((current, edit) -> {
+      for (int i = 0; i < keys.length; i++) {
+        current = current.set(keys[i], values[i], edit);
+      } // for
+      return current;
+    });
+  } // setAll(K[], V[])
+
+  public void setAll(AssociativeArray<? extends K, ? extends V> other) {
+    this.update((current, edit) -> {
+      for (Map.Entry<? extends K, ? extends V> pair : other.entries()) {
+        current = current.set(pair.getKey(), pair.getValue(), edit);
+      } // for
+      return current;
+    });
+  } // setAll(AssociativeArray)
+
+  /**
+   * Get the value associated with key, or atomically add the one computed
+   * by mappingFunction. The function runs at most once per call, outside
+   * of any retry, but if another thread adds the key first its value wins.
+   */
+  public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+    State<K, V> current = this.state.get();
+    int idx = current.indexOf(key);
+    if (idx >= 0) {
+      return current.pairs.get(idx).value;
+    } // if
+    V value = mappingFunction.apply(key);
+    while (true) {
+      current = this.state.get();
+      idx = current.indexOf(key);
+      if (idx >= 0) {
+        return current.pairs.get(idx).value;
+      } // if
+      this.checkWritable();
+      if (this.state.compareAndSet(current, current.set(key, value, null))) {
+        return value;
+      } // if
+    } // while
+  } // computeIfAbsent(K, Function)
+
+  public void remove(K key) {
+    if (!this.hasKey(key)) {
+      return;
+    } // if
+    this.update((current, edit) -> current.remove(key, edit));
+  } // remove(K)
+
+  /**
+   * The state grows as needed, so there is nothing to expand.
+   */
+  public void expand() {
+  } // expand()
+
+  // +-----------------+---------------------------------------------
+  // | Private Methods |
+  // +-----------------+
+
+  /**
+   * Apply change, with a fresh edit token, to the current state and
+   * publish the result, retrying from the newer state if another writer
+   * published first.
+   */
+  void update(BiFunction<State<K, V>, Object, State<K, V>> change) {
+    this.checkWritable();
+    while (true) {
+      State<K, V> current = this.state.get();
+      State<K, V> next = change.apply(current, new Object());
+      if (next == current || this.state.compareAndSet(current, next)) {
+        return;
+      } // if
+    } // while
+  } // update(BiFunction)
+
+  /**
+   * Throw if this is a read-only snapshot.
+   */
+  void checkWritable() {
+    if (this.readOnly) {
+      throw new UnsupportedOperationException("read-only snapshot");
+    } // if
+  } // checkWritable()
+
+  Collection<K> keys(State<K, V> current) {
+    return new StateView<K, V, K>(current, pair -> pair.key);
+  } // keys(State)
+
+  // +-------+-------------------------------------------------------
+  // | Views |
+  // +-------+
+
+  /**
+   * A view of one part of each pair of a state. Spliterators of a state
+   * with no holes are SIZED and SUBSIZED so that parallel streams split
+   * evenly.
+   */
+  static final class StateView<K, V, T> extends AbstractCollection<T> {
+    final State<K, V> state;
+    final Function<KVPair<K, V>, T> part;
+
+    StateView(State<K, V> state, Function<KVPair<K, V>, T> part) {
+      this.state = state;
+      this.part = part;
+    } // StateView(State, Function)
+
+    public int size() {
+      return this.state.size;
+    } // size()
+
+    public Iterator<T> iterator() {
+      return new Iterator<T>() {
+        final Walk<K, V> walk = new Walk<K, V>(state.pairs);
+        int i = 0;
+
+        public boolean hasNext() {
+          while (i < state.pairs.count && walk.at(i) == null) {
+            i++;
+          } // while
+          return i < state.pairs.count;
+        } // hasNext()
+
+        public T next() {
+          if (!hasNext()) {
+            throw new NoSuchElementException();
+          } // if
+          return part.apply(walk.at(i++));
+        } // next()
+      };
+    } // iterator()
+
+    public Spliterator<T> spliterator() {
+      return new StateSpliterator<K, V, T>(this.state, 0, this.state.pairs.count, this.part);
+    } // spliterator()
+  } // class StateView
+
+  /**
+   * A spliterator over positions [lo .. hi) of a state, skipping holes.
+   */
+  static final class StateSpliterator<K, V, T> implements Spliterator<T> {
+    final State<K, V> state;
+    final Walk<K, V> walk;
+    int lo;
+    final int hi;
+    final Function<KVPair<K, V>, T> part;
+
+    StateSpliterator(State<K, V> state, int lo, int hi, Function<KVPair<K, V>, T> part) {
+      this.state = state;
+      this.walk = new Walk<K, V>(state.pairs);
+      this.lo = lo;
+      this.hi = hi;
+      this.part = part;
+    } // StateSpliterator(State, int, int, Function)
+
+    public boolean tryAdvance(Consumer<? super T> action) {
+      while (this.lo < this.hi) {
+        KVPair<K, V> pair = this.walk.at(this.lo++);
+        if (pair != null) {
+          action.accept(this.part.apply(pair));
+          return true;
+        } // if
+      } // while
+      return false;
+    } // tryAdvance(Consumer)
+
+    public void forEachRemaining(Consumer<? super T> action) {
+      for (; this.lo < this.hi; this.lo++) {
+        KVPair<K, V> pair = this.walk.at(this.lo);
+        if (pair != null) {
+          action.accept(this.part.apply(pair));
+        } // if
+      } // for
+    } // forEachRemaining(Consumer)
+
+    public Spliterator<T> trySplit() {
+      int mid = (this.lo + this.hi) >>> 1;
+      if (mid <= this.lo) {
+        return null;
+      } // if
+      StateSpliterator<K, V, T> prefix =
+          new StateSpliterator<K, V, T>(this.state, this.lo, mid, this.part);
+      this.lo = mid;
+      return prefix;
+    } // trySplit()
+
+    public long estimateSize() {
+      return this.hi - this.lo;
+    } // estimateSize()
+
+    public int characteristics() {
+      if (this.state.size == this.state.pairs.count) {
+        return Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED
+            | Spliterator.IMMUTABLE;
+      } // if
+      return Spliterator.ORDERED | Spliterator.IMMUTABLE;
+    } // characteristics()
+  } // class StateSpliterator
+} // class ConcurrentAssociativeArray
@@ -0,0 +1,280 @@
+package structures;
+
+/**
+ * An immutable map from keys to positions, held in a hash array mapped
+ * trie: each level of the tree picks a child by the next five bits of the
+ * key's hash, and a node keeps only the children it has, found by a
+ * bitmap. Adding or removing a key copies the nodes on its path, which is
+ * at most seven and usually three or four, rather than the whole map.
+ *
+ * A trie is its root: null when empty, otherwise a Node. Keys whose
+ * hashes are equal in every bit share a Collision. As with PairVector, a
+ * change made with an edit token may change the nodes it created with the
+ * same token in place.
+ *
+ * @author Joyce Gill
+ */
+final class HashTrie {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The bits of the hash used at each level.
+   */
+  static final int BITS = 5;
+  static final int MASK = (1 << BITS) - 1;
+
+  // +-------+-------------------------------------------------------
+  // | Nodes |
+  // +-------+
+
+  /**
+   * A key, its hash, and its position.
+   */
+  static final class Leaf {
+    final Object key;
+    final int hash;
+    final int position;
+
+    Leaf(Object key, int hash, int position) {
+      this.key = key;
+      this.hash = hash;
+      this.position = position;
+    } // Leaf(Object, int, int)
+  } // class Leaf
+
+  /**
+   * A node with a child (a Leaf, Node or Collision) for each bit set in
+   * bitmap, in order. Its fields change only while edit is in use.
+   */
+  static final class Node {
+    final Object edit;
+    int bitmap;
+    Object[] slots;
+
+    Node(Object edit, int bitmap, Object[] slots) {
+      this.edit = edit;
+      this.bitmap = bitmap;
+      this.slots = slots;
+    } // Node(Object, int, Object[])
+  } // class Node
+
+  /**
+   * Two or more keys with the same hash.
+   */
+  static final class Collision {
+    final int hash;
+    final Leaf[] leaves;
+
+    Collision(int hash, Leaf[] leaves) {
+      this.hash = hash;
+      this.leaves = leaves;
+    } // Collision(int, Leaf[])
+  } // class Collision
+
+  // +----------------+----------------------------------------------
+  // | Static Methods |
+  // +----------------+
+
+  /**
+   * The position of key, whose hash is hash, in the trie root, or -1.
+   */
+  static int find(Object root, Object key, int hash) {
+    Object node = root;
+    for (int shift = 0; node != null; shift += BITS) {
+      if (node instanceof Leaf) {
+        Leaf leaf = (Leaf) node;
+        return same(leaf.key, key) ? leaf.position : -1;
+      } // if
+      if (node instanceof Collision) {
+        for (Leaf leaf : ((Collision) node).leaves) {
+          if (same(leaf.key, key)) {
+            return leaf.position;
+          } // if
+        } // for
+        return -1;
+      } // if
+      Node branch = (Node) node;
+      int bit = bit(hash, shift);
+      if ((branch.bitmap & bit) == 0) {
+        return -1;
+      } // if
+      node = branch.slots[Integer.bitCount(branch.bitmap & (bit - 1))];
+    } // for
+    return -1;
+  } // find(Object, Object, int)
+
+  /**
+   * The trie root with leaf added, replacing any leaf with the same key.
+   */
+  static Object put(Object root, Leaf leaf, Object edit) {
+    if (root == null) {
+      return new Node(edit, bit(leaf.hash, 0), new Object[] { leaf });
+    } // if
+    return put(root, 0, leaf, edit);
+  } // put(Object, Leaf, Object)
+
+  /**
+   * The trie root without key, whose hash is hash.
+   */
+  static Object remove(Object root, Object key, int hash, Object edit) {
+    if (root == null) {
+      return null;
+    } // if
+    return remove(root, 0, key, hash, edit);
+  } // remove(Object, Object, int, Object)
+
+  // +-----------------+---------------------------------------------
+  // | Private Methods |
+  // +-----------------+
+
+  /**
+   * Determine whether two keys are the same, as AssociativeArray does.
+   */
+  static boolean same(Object a, Object b) {
+    return a == b || (a != null && a.equals(b));
+  } // same(Object, Object)
+
+  /**
+   * The bit of a node's bitmap that hash falls under at shift.
+   */
+  static int bit(int hash, int shift) {
+    return 1 << ((hash >>> shift) & MASK);
+  } // bit(int, int)
+
+  /**
+   * node with its bitmap and slots set, changed in place if edit owns it.
+   */
+  static Node with(Node node, int bitmap, Object[] slots, Object edit) {
+    if (edit != null && node.edit == edit) {
+      node.bitmap = bitmap;
+      node.slots = slots;
+      return node;
+    } // if
+    return new Node(edit, bitmap, slots);
+  } // with(Node, int, Object[], Object)
+
+  static Object put(Object node, int shift, Leaf leaf, Object edit) {
+    if (node instanceof Collision) {
+      Collision collision = (Collision) node;
+      if (collision.hash != leaf.hash) {
+        return branch(collision, collision.hash, leaf, leaf.hash, shift, edit);
+      } // if
+      Leaf[] leaves = collision.leaves;
+      for (int i = 0; i < leaves.length; i++) {
+        if (same(leaves[i].key, leaf.key)) {
+          leaves = leaves.clone();
+          leaves[i] = leaf;
+          return new Collision(leaf.hash, leaves);
+        } // if
+      } // for
+      leaves = java.util.Arrays.copyOf(leaves, leaves.length + 1);
+      leaves[leaves.length - 1] = leaf;
+      return new Collision(leaf.hash, leaves);
+    } // if
+
+    Node branch = (Node) node;
+    int bit = bit(leaf.hash, shift);
+    int i = Integer.bitCount(branch.bitmap & (bit - 1));
+    if ((branch.bitmap & bit) == 0) {
+      Object[] slots = new Object[branch.slots.length + 1];
+      System.arraycopy(branch.slots, 0, slots, 0, i);
+      slots[i] = leaf;
+      System.arraycopy(branch.slots, i, slots, i + 1, branch.slots.length - i);
+      return with(branch, branch.bitmap | bit, slots, edit);
+    } // if
+    Object child = branch.slots[i];
+    Object replacement;
+    if (child instanceof Leaf) {
+      Leaf old = (Leaf) child;
+      if (same(old.key, leaf.key)) {
+        replacement = leaf;
+      } else if (old.hash == leaf.hash) {
+        replacement = new Collision(leaf.hash, new Leaf[] { old, leaf });
+      } else {
+        replacement = branch(old, old.hash, leaf, leaf.hash, shift + BITS, edit);
+      } // if/else
+    } else {
+      replacement = put(child, shift + BITS, leaf, edit);
+    } // if/else
+    return replace(branch, i, replacement, edit);
+  } // put(Object, int, Leaf, Object)
+
+  /**
+   * A node at shift holding a and b, whose hashes differ.
+   */
+  static Node branch(Object a, int hashA, Object b, int hashB, int shift, Object edit) {
+    int bitA = bit(hashA, shift);
+    int bitB = bit(hashB, shift);
+    if (bitA == bitB) {
+      return new Node(edit, bitA, new Object[] { branch(a, hashA, b, hashB, shift + BITS, edit) });
+    } // if
+    // Bit 31 is negative, so compare the bits unsigned
+    Object[] slots = (Integer.compareUnsigned(bitA, bitB) < 0) ? new Object[] { a, b }
+        : new Object[] { b, a };
+    return new Node(edit, bitA | bitB, slots);
+  } // branch(Object, int, Object, int, int, Object)
+
+  /**
+   * branch with slot i replaced by child.
+   */
+  static Node replace(Node branch, int i, Object child, Object edit) {
+    if (branch.slots[i] == child) {
+      return branch;
+    } // if
+    Object[] slots = (edit != null && branch.edit == edit) ? branch.slots : branch.slots.clone();
+    slots[i] = child;
+    return with(branch, branch.bitmap, slots, edit);
+  } // replace(Node, int, Object, Object)
+
+  /**
+   * node without key: a Node, a Collision, a lone Leaf that the parent
+   * may hold directly, or null if nothing is left.
+   */
+  static Object remove(Object node, int shift, Object key, int hash, Object edit) {
+    if (node instanceof Collision) {
+      Leaf[] leaves = ((Collision) node).leaves;
+      for (int i = 0; i < leaves.length; i++) {
+        if (same(leaves[i].key, key)) {
+          if (leaves.length == 2) {
+            return leaves[1 - i];
+          } // if
+          Leaf[] rest = new Leaf[leaves.length - 1];
+          System.arraycopy(leaves, 0, rest, 0, i);
+          System.arraycopy(leaves, i + 1, rest, i, rest.length - i);
+          return new Collision(hash, rest);
+        } // if
+      } // for
+      return node;
+    } // if
+
+    Node branch = (Node) node;
+    int bit = bit(hash, shift);
+    if ((branch.bitmap & bit) == 0) {
+      return branch;
+    } // if
+    int i = Integer.bitCount(branch.bitmap & (bit - 1));
+    Object child = branch.slots[i];
+    Object replacement;
+    if (child instanceof Leaf) {
+      replacement = same(((Leaf) child).key, key) ? null : child;
+    } else {
+      replacement = remove(child, shift + BITS, key, hash, edit);
+    } // if/else
+    if (replacement != null) {
+      return replace(branch, i, replacement, edit);
+    } // if
+    if (branch.slots.length == 1) {
+      return null;
+    } // if
+    Object[] slots = new Object[branch.slots.length - 1];
+    System.arraycopy(branch.slots, 0, slots, 0, i);
+    System.arraycopy(branch.slots, i + 1, slots, i, slots.length - i);
+    if (shift > 0 && slots.length == 1 && slots[0] instanceof Leaf) {
+      // A lone leaf moves up into the parent
+      return slots[0];
+    } // if
+    return with(branch, branch.bitmap & ~bit, slots, edit);
+  } // remove(Object, int, Object, int, Object)
+} // class HashTrie
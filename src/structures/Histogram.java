@@ -0,0 +1,144 @@
+package structures;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of non-negative values with one bucket per power of
+ * two, so recording costs a few atomic adds and percentiles are accurate to
+ * within a factor of two.
+ *
+ * @author Joyce Gill
+ */
+public class Histogram implements HistogramMBean {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The name under which the histogram is reported.
+   */
+  final String name;
+
+  /**
+   * What the values measure.
+   */
+  final String unit;
+
+  /**
+   * buckets[i] counts the values v with 2^(i-1) <= v < 2^i (bucket 0 counts
+   * zeros).
+   */
+  final AtomicLongArray buckets = new AtomicLongArray(65);
+
+  final LongAdder count = new LongAdder();
+  final LongAdder sum = new LongAdder();
+  final AtomicLong max = new AtomicLong();
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create an empty histogram.
+   */
+  public Histogram(String name, String unit) {
+    this.name = name;
+    this.unit = unit;
+  } // Histogram(String, String)
+
+  // +----------------+----------------------------------------------
+  // | Public Methods |
+  // +----------------+
+
+  /**
+   * Record one value. Negative values count as zero.
+   */
+  public void record(long value) {
+    if (value < 0) {
+      value = 0;
+    } // if
+    this.buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value));
+    this.count.increment();
+    this.sum.add(value);
+    long seen = this.max.get();
+    while (value > seen && !this.max.compareAndSet(seen, value)) {
+      seen = this.max.get();
+    } // while
+  } // record(long)
+
+  /**
+   * Record the nanoseconds elapsed since start, a value of System.nanoTime().
+   */
+  public void recordSince(long start) {
+    this.record(System.nanoTime() - start);
+  } // recordSince(long)
+
+  public String getName() {
+    return this.name;
+  } // getName()
+
+  public String getUnit() {
+    return this.unit;
+  } // getUnit()
+
+  public long getCount() {
+    return this.count.sum();
+  } // getCount()
+
+  public double getMean() {
+    long n = this.count.sum();
+    return (n == 0) ? 0 : (double) this.sum.sum() / n;
+  } // getMean()
+
+  public long getMax() {
+    return this.max.get();
+  } // getMax()
+
+  public long getP50() {
+    return this.percentile(0.50);
+  } // getP50()
+
+  public long getP99() {
+    return this.percentile(0.99);
+  } // getP99()
+
+  /**
+   * An upper bound on the given fraction of values: the top of the first
+   * bucket at which that fraction has been seen.
+   */
+  public long percentile(double fraction) {
+    long n = 0;
+    for (int i = 0; i < this.buckets.length(); i++) {
+      n += this.buckets.get(i);
+    } // for
+    long target = (long) Math.ceil(n * fraction);
+    long seen = 0;
+    for (int i = 0; i < this.buckets.length(); i++) {
+      seen += this.buckets.get(i);
+      if (seen >= target && seen > 0) {
+        return (i == 0) ? 0 : Math.min(this.max.get(), (i >= 63) ? Long.MAX_VALUE : (1L << i) - 1);
+      } // if
+    } // for
+    return 0;
+  } // percentile(double)
+
+  public void reset() {
+    for (int i = 0; i < this.buckets.length(); i++) {
+      this.buckets.set(i, 0);
+    } // for
+    this.count.reset();
+    this.sum.reset();
+    this.max.set(0);
+  } // reset()
+
+  /**
+   * Summarize the histogram on one line.
+   */
+  public String toString() {
+    return String.format("%-28s count=%d mean=%.1f p50=%d p99=%d max=%d %s",
+        this.name, this.getCount(), this.getMean(), this.getP50(), this.getP99(),
+        this.getMax(), this.unit);
+  } // toString()
+} // class Histogram
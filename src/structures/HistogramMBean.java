@@ -0,0 +1,29 @@
+package structures;
+
+/**
+ * The JMX view of a Histogram.
+ *
+ * @author Joyce Gill
+ */
+public interface HistogramMBean {
+  /** The number of values recorded. */
+  long getCount();
+
+  /** The mean of the values recorded. */
+  double getMean();
+
+  /** The largest value recorded. */
+  long getMax();
+
+  /** An upper bound on the median. */
+  long getP50();
+
+  /** An upper bound on the 99th percentile. */
+  long getP99();
+
+  /** What the values measure, such as "ns" or "probes". */
+  String getUnit();
+
+  /** Forget every value recorded so far. */
+  void reset();
+} // interface HistogramMBean
@@ -0,0 +1,259 @@
+package structures;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.imageio.ImageIO;
+import javax.swing.ImageIcon;
+
+/**
+ * A cache of decoded icons, keyed by path and size, so that showing a page
+ * again does not read and decode its images again.
+ *
+ * Each icon is decoded once and scaled down to fit the size it is shown at.
+ * The cache keeps the most recently used icons up to a budget of bytes
+ * (four per pixel), and holds them through soft references, so the
+ * garbage collector may still take them back if memory runs short. Icons
+ * can be loaded ahead of time on a background thread by prefetch.
+ *
+ * @author Joyce Gill
+ */
+public class IconCache {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The default budget: the aac.iconBudget property, or 32 MB.
+   */
+  public static final long DEFAULT_BUDGET = Long.getLong("aac.iconBudget", 32L << 20);
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The most bytes of pixels the cache may hold.
+   */
+  final long budget;
+
+  /**
+   * The icons, least recently used first, and the bytes of their pixels.
+   */
+  final LinkedHashMap<String,Entry> icons = new LinkedHashMap<String,Entry>(64, 0.75f, true);
+  long bytes;
+
+  /**
+   * Counts of lookups that found their icon, that had to load it, and of
+   * icons loaded by prefetch.
+   */
+  long hits;
+  long misses;
+  long prefetched;
+
+  /**
+   * The thread that prefetches icons.
+   */
+  final ExecutorService prefetcher = Executors.newSingleThreadExecutor(task -> {
+    Thread thread = new Thread(task, "icon-prefetch");
+    thread.setDaemon(true);
+    thread.setPriority(Thread.MIN_PRIORITY);
+    return thread;
+  });
+
+  /**
+   * An icon in the cache.
+   */
+  static class Entry {
+    final SoftReference<ImageIcon> icon;
+    final long bytes;
+
+    Entry(ImageIcon icon, long bytes) {
+      this.icon = new SoftReference<ImageIcon>(icon);
+      this.bytes = bytes;
+    } // Entry(ImageIcon, long)
+  } // class Entry
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a cache with the default budget.
+   */
+  public IconCache() {
+    this(DEFAULT_BUDGET);
+  } // IconCache()
+
+  /**
+   * Create a cache that holds at most budget bytes of pixels.
+   */
+  public IconCache(long budget) {
+    this.budget = budget;
+  } // IconCache(long)
+
+  // +----------------+----------------------------------------------
+  // | Public Methods |
+  // +----------------+
+
+  /**
+   * The icon for the image at path, scaled down to fit in a size-by-size
+   * square if it is bigger, or at its own size if size is 0. A missing or
+   * unreadable image gives an empty icon, as new ImageIcon(path) does.
+   */
+  public ImageIcon get(String path, int size) {
+    String key = key(path, size);
+    ImageIcon icon = this.lookup(key);
+    if (icon != null) {
+      return icon;
+    } // if
+    synchronized (this) {
+      this.misses++;
+    } // synchronized
+    return this.load(key, path, size);
+  } // get(String, int)
+
+  /**
+   * Load the icons for paths at size on the background thread, skipping
+   * those already in the cache. The future is done when they are loaded.
+   */
+  public Future<?> prefetch(Collection<String> paths, int size) {
+    ArrayList<String> copy = new ArrayList<String>(paths);
+    return this.prefetcher.submit(() -> {
+      for (String path : copy) {
+        String key = key(path, size);
+        boolean cached;
+        synchronized (this) {
+          Entry entry = this.icons.get(key);
+          cached = (entry != null) && (entry.icon.get() != null);
+        } // synchronized
+        if (!cached) {
+          this.load(key, path, size);
+          synchronized (this) {
+            this.prefetched++;
+          } // synchronized
+        } // if
+      } // for
+    });
+  } // prefetch(Collection<String>, int)
+
+  /**
+   * Stop prefetching.
+   */
+  public void close() {
+    this.prefetcher.shutdownNow();
+  } // close()
+
+  public synchronized String toString() {
+    return this.icons.size() + " icons, " + this.bytes + " of " + this.budget + " bytes, "
+        + this.hits + " hits, " + this.misses + " misses, " + this.prefetched + " prefetched";
+  } // toString()
+
+  // +-----------------+---------------------------------------------
+  // | Private Methods |
+  // +-----------------+
+
+  /**
+   * The key for path at size.
+   */
+  static String key(String path, int size) {
+    return size + ":" + path;
+  } // key(String, int)
+
+  /**
+   * The cached icon for key, or null, dropping it if the garbage collector
+   * has taken it.
+   */
+  synchronized ImageIcon lookup(String key) {
+    Entry entry = this.icons.get(key);
+    if (entry == null) {
+      return null;
+    } // if
+    ImageIcon icon = entry.icon.get();
+    if (icon == null) {
+      this.icons.remove(key);
+      this.bytes -= entry.bytes;
+      return null;
+    } // if
+    this.hits++;
+    return icon;
+  } // lookup(String)
+
+  /**
+   * Decode and scale the image at path, and cache it under key.
+   */
+  ImageIcon load(String key, String path, int size) {
+    BufferedImage image = null;
+    try {
+      image = ImageIO.read(new File(path));
+    } catch (IOException e) {
+      // Shown as an empty icon, like new ImageIcon(path)
+    } // try/catch
+    ImageIcon icon;
+    long cost;
+    if (image == null) {
+      icon = new ImageIcon();
+      cost = 0;
+    } else {
+      image = scale(image, size);
+      icon = new ImageIcon(image);
+      cost = 4L * image.getWidth() * image.getHeight();
+    } // if/else
+
+    synchronized (this) {
+      Entry old = this.icons.put(key, new Entry(icon, cost));
+      if (old != null) {
+        this.bytes -= old.bytes;
+      } // if
+      this.bytes += cost;
+      this.evict();
+    } // synchronized
+    return icon;
+  } // load(String, String, int)
+
+  /**
+   * Scale image down to fit a size-by-size square, keeping its shape, into
+   * an image that is quick to paint.
+   */
+  static BufferedImage scale(BufferedImage image, int size) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    if (size > 0 && (width > size || height > size)) {
+      double factor = (double) size / Math.max(width, height);
+      width = Math.max(1, (int) Math.round(width * factor));
+      height = Math.max(1, (int) Math.round(height * factor));
+    } else if (image.getType() == BufferedImage.TYPE_INT_ARGB) {
+      return image;
+    } // if/else
+    BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D pen = scaled.createGraphics();
+    pen.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+        RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+    pen.drawImage(image, 0, 0, width, height, null);
+    pen.dispose();
+    return scaled;
+  } // scale(BufferedImage, int)
+
+  /**
+   * Drop the least recently used icons until the cache fits its budget.
+   */
+  void evict() {
+    Iterator<Map.Entry<String,Entry>> lru = this.icons.entrySet().iterator();
+    while (this.bytes > this.budget && lru.hasNext()) {
+      Entry victim = lru.next().getValue();
+      lru.remove();
+      this.bytes -= victim.bytes;
+    } // while
+  } // evict()
+} // class IconCache
@@ -1,10 +1,12 @@
 package structures;
 
+import java.util.Map;
+
 /**
  * An easy way to store key/value pairs.  We assume that other
  * classes will access fields directly.
  */
-class KVPair<K,V> {
+class KVPair<K,V> implements Map.Entry<K,V> {
   // +--------+------------------------------------------------------
   // | Fields |
   // +--------+
@@ -19,6 +21,12 @@ class KVPair<K,V> {
    */
   V value;
 
+  /**
+   * The token of the associative array that may change this pair in
+   * place, or null. See AssociativeArray.owner.
+   */
+  Object owner;
+
   // +--------------+------------------------------------------------
   // | Constructors |
   // +--------------+
@@ -34,9 +42,17 @@ class KVPair<K,V> {
    * Create a new key/value pair.
    */
   KVPair(K key, V value) {
+    this(key, value, null);
+  } // KVPair(K,V)
+
+  /**
+   * Create a new key/value pair that the owner may change in place.
+   */
+  KVPair(K key, V value, Object owner) {
     this.key = key;
     this.value = value;
-  } // KVPair(K,V)
+    this.owner = owner;
+  } // KVPair(K,V,Object)
 
   // +------------------+--------------------------------------------
   // | Standard methods |
@@ -57,5 +73,24 @@ class KVPair<K,V> {
   public V value() {
     return this.value;
   } // value()
+
+  // +-----------------+---------------------------------------------
+  // | Map.Entry views |
+  // +-----------------+
+
+  public K getKey() {
+    return this.key;
+  } // getKey()
+
+  public V getValue() {
+    return this.value;
+  } // getValue()
+
+  /**
+   * Entries handed out by the views of an AssociativeArray are read-only.
+   */
+  public V setValue(V value) {
+    throw new UnsupportedOperationException();
+  } // setValue(V)
 } // class KVPair
 
@@ -0,0 +1,403 @@
+package structures;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A text board whose categories are read the first time they are entered.
+ *
+ * Opening the board reads only its top-level lines, skipping the items of
+ * each category without making strings for them, and remembers where in
+ * the file each category's block starts and ends. A category is read from
+ * its block when it is asked for, and kept in a cache that holds the most
+ * recently used categories up to a budget of (estimated) bytes. Categories
+ * that have been changed are never evicted, since the file does not have
+ * their changes.
+ *
+ * The file stays open, so that the blocks can still be read after the
+ * board is replaced by a compaction (see BoardJournal).
+ *
+ * @author Joyce Gill
+ */
+public class LazyBoard implements CategorySource {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The estimated cost, in bytes, of each item beyond its characters: the
+   * pair, two strings, and a slot in the index.
+   */
+  static final int ITEM_OVERHEAD = 112;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The board and its name, for error messages.
+   */
+  final FileChannel channel;
+  final String name;
+
+  /**
+   * Whether the categories are safe to share between threads.
+   */
+  final boolean concurrent;
+
+  /**
+   * The most bytes the cached categories may take up.
+   */
+  final long budget;
+
+  /**
+   * The top-level images and the items before the first category.
+   */
+  final AACCategory topLevel;
+
+  /**
+   * Where each category is: its name, the line it starts on, and where
+   * its block starts and ends in the file.
+   */
+  final AssociativeArray<String,Block> blocks;
+
+  /**
+   * The categories read so far, least recently used first, and the bytes
+   * they take up.
+   */
+  final LinkedHashMap<String,Cached> cache = new LinkedHashMap<String,Cached>(16, 0.75f, true);
+  long cached;
+
+  /**
+   * The categories that have been changed, which stay in memory.
+   */
+  final AssociativeArray<String,AACCategory> changed;
+
+  /**
+   * The number of categories read from the file and evicted, for tuning the
+   * budget.
+   */
+  int loads;
+  int evictions;
+
+  /**
+   * Where a category's lines are.
+   */
+  static class Block {
+    final String name;
+    final int line;
+    final long start;
+    long end;
+
+    Block(String name, int line, long start) {
+      this.name = name;
+      this.line = line;
+      this.start = start;
+    } // Block(String, int, long)
+  } // class Block
+
+  /**
+   * A category in the cache, with its estimated size.
+   */
+  static class Cached {
+    final LazyCategory category;
+    final long bytes;
+
+    Cached(LazyCategory category, long bytes) {
+      this.category = category;
+      this.bytes = bytes;
+    } // Cached(LazyCategory, long)
+  } // class Cached
+
+  /**
+   * A category that tells its board when it is changed, so that it is
+   * kept rather than evicted.
+   */
+  class LazyCategory extends AACCategory {
+    final String imageLoc;
+
+    LazyCategory(String imageLoc, String name) {
+      super(name, LazyBoard.this.concurrent);
+      this.imageLoc = imageLoc;
+    } // LazyCategory(String, String)
+
+    public void addItem(String imageLoc, String text) {
+      super.addItem(imageLoc, text);
+      LazyBoard.this.pin(this);
+    } // addItem(String, String)
+
+    public void addItems(String[] imageLocs, String[] texts) {
+      super.addItems(imageLocs, texts);
+      LazyBoard.this.pin(this);
+    } // addItems(String[], String[])
+  } // class LazyCategory
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a board for the open file channel whose categories take up at
+   * most about budget bytes.
+   */
+  LazyBoard(FileChannel channel, String name, boolean concurrent, long budget,
+      AACCategory topLevel, AssociativeArray<String,Block> blocks,
+      AssociativeArray<String,AACCategory> changed) {
+    this.channel = channel;
+    this.name = name;
+    this.concurrent = concurrent;
+    this.budget = budget;
+    this.topLevel = topLevel;
+    this.blocks = blocks;
+    this.changed = changed;
+  } // LazyBoard(...)
+
+  // +----------------+----------------------------------------------
+  // | Static Methods |
+  // +----------------+
+
+  /**
+   * Read the top level of the board in file and note where its categories
+   * are. Bad top-level lines are added to errors.
+   */
+  public static LazyBoard open(Path file, boolean concurrent, long budget,
+      List<BoardParseException> errors) throws IOException {
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+    AACCategory topLevel = new AACCategory("", concurrent);
+    AssociativeArray<String,Block> blocks = new AssociativeArray<String,Block>();
+    ArrayList<String> locs = new ArrayList<String>();
+    ArrayList<String> texts = new ArrayList<String>();
+    ArrayList<Block> order = new ArrayList<Block>();
+    BoardReader reader = new BoardReader(false, true);
+    try {
+      reader.read(file, new BoardReader.Handler() {
+        public void category(String imageLoc, String text) {
+          Block block = new Block(text, reader.line(), reader.offset());
+          order.add(block);
+          blocks.set(imageLoc, block);
+          locs.add(imageLoc);
+          texts.add(text);
+        } // category(String, String)
+
+        public void item(String imageLoc, String text) {
+          // Only the items before the first category get here
+          locs.add(imageLoc);
+          texts.add(text);
+        } // item(String, String)
+      });
+    } catch (BoardParseException e) {
+      // Only a strict reader throws, and this one skips bad lines
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    } // try/catch
+    errors.addAll(reader.errors());
+
+    // Each block ends where the next begins
+    long size = channel.size();
+    for (int i = 0; i < order.size(); i++) {
+      order.get(i).end = (i + 1 < order.size()) ? order.get(i + 1).start : size;
+    } // for
+    topLevel.addItems(locs.toArray(new String[locs.size()]), texts.toArray(new String[texts.size()]));
+    return new LazyBoard(channel, file.toString(), concurrent, budget, topLevel, blocks,
+        new AssociativeArray<String,AACCategory>());
+  } // open(Path, boolean, long, List<BoardParseException>)
+
+  // +----------------+----------------------------------------------
+  // | Public Methods |
+  // +----------------+
+
+  /**
+   * The category behind top-level image imageLoc, or null, reading it
+   * from the file if it is not in memory.
+   */
+  public synchronized AACCategory category(String imageLoc) {
+    AACCategory kept = this.changed.getOrDefault(imageLoc, null);
+    if (kept != null) {
+      return kept;
+    } // if
+    Cached hit = this.cache.get(imageLoc);
+    if (hit != null) {
+      return hit.category;
+    } // if
+    Block block = this.blocks.getOrDefault(imageLoc, null);
+    if (block == null) {
+      return null;
+    } // if
+
+    LazyCategory category = new LazyCategory(imageLoc, block.name);
+    long bytes;
+    try {
+      bytes = this.read(block, category);
+    } catch (IOException e) {
+      System.err.println("Error: unable to read " + this.name + ": " + e.getMessage());
+      return category;
+    } // try/catch
+    this.loads++;
+    this.cache.put(imageLoc, new Cached(category, bytes));
+    this.cached += bytes;
+    this.evict();
+    return category;
+  } // category(String)
+
+  /**
+   * The category behind imageLoc, or null, read from the file if it has
+   * not been changed, and without going into the cache or evicting any
+   * category that is there.
+   */
+  public AACCategory peek(String imageLoc) {
+    Block block;
+    synchronized (this) {
+      AACCategory kept = this.changed.getOrDefault(imageLoc, null);
+      if (kept != null) {
+        return kept;
+      } // if
+      block = this.blocks.getOrDefault(imageLoc, null);
+    } // synchronized
+    if (block == null) {
+      return null;
+    } // if
+    AACCategory category = new AACCategory(block.name, this.concurrent);
+    try {
+      this.read(block, category);
+    } catch (IOException e) {
+      System.err.println("Error: unable to read " + this.name + ": " + e.getMessage());
+    } // try/catch
+    return category;
+  } // peek(String)
+
+  public AACCategory topLevel() {
+    return this.topLevel;
+  } // topLevel()
+
+  /**
+   * The categories are kept here, changed ones included, so AACMappings
+   * need not keep them too.
+   */
+  public boolean keepsChanges() {
+    return true;
+  } // keepsChanges()
+
+  /**
+   * A copy of the board that later changes to its categories do not
+   * affect. It reads the same file, and caches nothing.
+   */
+  public synchronized CategorySource snapshot() {
+    AssociativeArray<String,AACCategory> copies =
+        new AssociativeArray<String,AACCategory>(this.changed.size());
+    for (Map.Entry<String,AACCategory> entry : this.changed.entries()) {
+      copies.set(entry.getKey(), entry.getValue().snapshot());
+    } // for
+    return new LazyBoard(this.channel, this.name, this.concurrent, 0, this.topLevel,
+        this.blocks, copies);
+  } // snapshot()
+
+  /**
+   * Close the board. Its snapshots read through the same channel, so this
+   * comes after the last of them has been read.
+   */
+  public void close() throws IOException {
+    this.channel.close();
+  } // close()
+
+  /**
+   * The number of categories in memory.
+   */
+  public synchronized int loaded() {
+    return this.cache.size() + this.changed.size();
+  } // loaded()
+
+  /**
+   * The estimated bytes taken up by the cached categories.
+   */
+  public synchronized long cachedBytes() {
+    return this.cached;
+  } // cachedBytes()
+
+  public synchronized String toString() {
+    return this.name + ": " + this.blocks.size() + " categories, " + this.loaded()
+        + " in memory (" + this.cached + " of " + this.budget + " bytes), " + this.loads
+        + " loads, " + this.evictions + " evictions";
+  } // toString()
+
+  // +-----------------+---------------------------------------------
+  // | Private Methods |
+  // +-----------------+
+
+  /**
+   * Read the items of block into category and return their estimated size.
+   */
+  long read(Block block, AACCategory category) throws IOException {
+    int length = (int) (block.end - block.start);
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    long position = block.start;
+    while (buffer.hasRemaining()) {
+      int n = this.channel.read(buffer, position + buffer.position());
+      if (n < 0) {
+        break;
+      } // if
+    } // while
+    byte[] bytes = buffer.array();
+    ArrayList<String> locs = new ArrayList<String>();
+    ArrayList<String> texts = new ArrayList<String>();
+    long[] size = new long[1];
+    BoardReader reader = new BoardReader();
+    // The category may be evicted, and the table would keep its strings
+    reader.share = false;
+    try {
+      reader.read(this.name, bytes, 0, buffer.position(), block.line, new BoardReader.Handler() {
+        public void category(String imageLoc, String text) {
+          // The block's own top-level line
+        } // category(String, String)
+
+        public void item(String imageLoc, String text) {
+          locs.add(imageLoc);
+          texts.add(text);
+          size[0] += ITEM_OVERHEAD + 2L * (imageLoc.length() + text.length());
+        } // item(String, String)
+      });
+    } catch (BoardParseException e) {
+      // Only a strict reader throws, and this one skips bad lines
+    } // try/catch
+    for (BoardParseException e : reader.errors()) {
+      System.err.println("Error: " + e.getMessage());
+    } // for
+    // Fill in the category without pinning it
+    category.arr.setAll(locs.toArray(new String[locs.size()]),
+        texts.toArray(new String[texts.size()]));
+    return size[0] + AssociativeArray.indexLength(Math.max(1, locs.size())) * 4L;
+  } // read(Block, AACCategory)
+
+  /**
+   * Evict the least recently used categories until the cache fits the
+   * budget. The most recent one always stays, however big it is.
+   */
+  void evict() {
+    Iterator<Map.Entry<String,Cached>> lru = this.cache.entrySet().iterator();
+    while (this.cached > this.budget && this.cache.size() > 1 && lru.hasNext()) {
+      Cached victim = lru.next().getValue();
+      lru.remove();
+      this.cached -= victim.bytes;
+      this.evictions++;
+    } // while
+  } // evict()
+
+  /**
+   * Keep category in memory for good, since it has been changed.
+   */
+  synchronized void pin(LazyCategory category) {
+    Cached entry = this.cache.remove(category.imageLoc);
+    if (entry != null) {
+      this.cached -= entry.bytes;
+    } // if
+    this.changed.set(category.imageLoc, category);
+  } // pin(LazyCategory)
+} // class LazyBoard
@@ -0,0 +1,229 @@
+package structures;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A compiled board, memory-mapped and read in place. Opening one reads
+ * only the header, so it costs the same for a hundred symbols as for a
+ * million; strings are decoded only when asked for.
+ *
+ * The file is written by BoardCompiler. All numbers are big-endian ints.
+ *
+ *   header      MAGIC, VERSION, stringCount, categoryCount, itemCount,
+ *               and the offsets of the five sections below
+ *   strings     stringCount x (offset into blob, length in bytes)
+ *   blob        the UTF-8 bytes of every distinct string
+ *   categories  categoryCount x (name, itemCount, firstItem, firstSlot, slotCount)
+ *   items       itemCount x (imageLoc, text, hash of imageLoc)
+ *   slots       for each category, an open-addressing table of slotCount
+ *               entries, each one more than an item number, or 0
+ *
+ * Category 0 holds the top-level images, and category i + 1 holds the
+ * items behind top-level image i.
+ *
+ * @author Joyce Gill
+ */
+public class MappedBoard implements CategorySource {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The first four bytes of every compiled board: "AACB".
+   */
+  public static final int MAGIC = 0x41414342;
+
+  /**
+   * The version of the format.
+   */
+  static final int VERSION = 1;
+
+  /**
+   * The number of ints in the header, each record of each section.
+   */
+  static final int HEADER_INTS = 10;
+  static final int STRING_INTS = 2;
+  static final int CATEGORY_INTS = 5;
+  static final int ITEM_INTS = 3;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The mapped file.
+   */
+  final MappedByteBuffer buffer;
+
+  /**
+   * Whether materialized categories must be safe to share between threads.
+   */
+  final boolean concurrent;
+
+  final int stringCount;
+  final int categoryCount;
+  final int itemCount;
+  final int strings;
+  final int blob;
+  final int categories;
+  final int items;
+  final int slots;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  MappedBoard(MappedByteBuffer buffer, boolean concurrent) throws IOException {
+    this.buffer = buffer;
+    this.concurrent = concurrent;
+    if (buffer.capacity() < HEADER_INTS * 4 || buffer.getInt(0) != MAGIC) {
+      throw new IOException("not a compiled board");
+    } // if
+    if (buffer.getInt(4) != VERSION) {
+      throw new IOException("unsupported compiled board version " + buffer.getInt(4));
+    } // if
+    this.stringCount = buffer.getInt(8);
+    this.categoryCount = buffer.getInt(12);
+    this.itemCount = buffer.getInt(16);
+    this.strings = buffer.getInt(20);
+    this.blob = buffer.getInt(24);
+    this.categories = buffer.getInt(28);
+    this.items = buffer.getInt(32);
+    this.slots = buffer.getInt(36);
+    if (this.categoryCount < 1 || this.slots > buffer.capacity()) {
+      throw new IOException("truncated compiled board");
+    } // if
+  } // MappedBoard(MappedByteBuffer, boolean)
+
+  // +----------------+----------------------------------------------
+  // | Static Methods |
+  // +----------------+
+
+  /**
+   * Map the compiled board in file.
+   */
+  public static MappedBoard open(Path file, boolean concurrent) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      // The mapping stays valid after the channel is closed
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      return new MappedBoard(buffer, concurrent);
+    } // try
+  } // open(Path, boolean)
+
+  /**
+   * Determine whether file holds a compiled board.
+   */
+  public static boolean isCompiled(Path file) {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      java.nio.ByteBuffer head = java.nio.ByteBuffer.allocate(4);
+      while (head.hasRemaining() && channel.read(head) >= 0) {
+        // keep reading
+      } // while
+      return !head.hasRemaining() && head.getInt(0) == MAGIC;
+    } catch (IOException e) {
+      return false;
+    } // try/catch
+  } // isCompiled(Path)
+
+  // +----------------+----------------------------------------------
+  // | Public Methods |
+  // +----------------+
+
+  /**
+   * The category behind top-level image imageLoc, or null.
+   */
+  public AACCategory category(String imageLoc) {
+    int item = this.find(0, imageLoc);
+    if (item < 0) {
+      return null;
+    } // if
+    return new MappedCategory(this, item + 1);
+  } // category(String)
+
+  /**
+   * The category of top-level images.
+   */
+  public AACCategory topLevel() {
+    return new MappedCategory(this, 0);
+  } // topLevel()
+
+  /**
+   * The number of categories, counting the top level.
+   */
+  public int categoryCount() {
+    return this.categoryCount;
+  } // categoryCount()
+
+  // +-----------------+---------------------------------------------
+  // | Package Methods |
+  // +-----------------+
+
+  String name(int category) {
+    return this.string(this.categoryInt(category, 0));
+  } // name(int)
+
+  int size(int category) {
+    return this.categoryInt(category, 1);
+  } // size(int)
+
+  String imageLoc(int category, int i) {
+    return this.string(this.itemInt(category, i, 0));
+  } // imageLoc(int, int)
+
+  String text(int category, int i) {
+    return this.string(this.itemInt(category, i, 1));
+  } // text(int, int)
+
+  /**
+   * Find the number of the item of category whose image is imageLoc, or
+   * -1, by probing that category's precomputed table.
+   */
+  int find(int category, String imageLoc) {
+    int slotCount = this.categoryInt(category, 4);
+    if (slotCount == 0) {
+      return -1;
+    } // if
+    int firstSlot = this.categoryInt(category, 3);
+    int hash = AssociativeArray.hash(imageLoc);
+    int mask = slotCount - 1;
+    for (int i = hash & mask; ; i = (i + 1) & mask) {
+      int slot = this.buffer.getInt(this.slots + 4 * (firstSlot + i));
+      if (slot == 0) {
+        return -1;
+      } // if
+      int item = slot - 1;
+      if (this.itemInt(category, item, 2) == hash && imageLoc.equals(this.imageLoc(category, item))) {
+        return item;
+      } // if
+    } // for
+  } // find(int, String)
+
+  // +-----------------+---------------------------------------------
+  // | Private Methods |
+  // +-----------------+
+
+  int categoryInt(int category, int field) {
+    return this.buffer.getInt(this.categories + 4 * (CATEGORY_INTS * category + field));
+  } // categoryInt(int, int)
+
+  int itemInt(int category, int i, int field) {
+    int item = this.categoryInt(category, 2) + i;
+    return this.buffer.getInt(this.items + 4 * (ITEM_INTS * item + field));
+  } // itemInt(int, int, int)
+
+  /**
+   * Decode string number id.
+   */
+  String string(int id) {
+    int offset = this.buffer.getInt(this.strings + 4 * (STRING_INTS * id));
+    int length = this.buffer.getInt(this.strings + 4 * (STRING_INTS * id + 1));
+    byte[] bytes = new byte[length];
+    this.buffer.get(this.blob + offset, bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  } // string(int)
+} // class MappedBoard
@@ -0,0 +1,123 @@
+package structures;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * A category that reads its items straight out of a MappedBoard. The
+ * first change copies the items into an ordinary associative array, after
+ * which the category behaves like any other.
+ *
+ * @author Joyce Gill
+ */
+class MappedCategory extends AACCategory {
+  /* Fields */
+  final MappedBoard board;
+  final int category;
+
+  /* Whether arr has been filled in; set last, so a reader that sees it also sees arr */
+  volatile boolean materialized;
+
+  /* Constructor for category number `category` of board */
+  MappedCategory (MappedBoard board, int category) {
+    super(board.name(category), (AssociativeArray<String,String>) null);
+    this.board = board;
+    this.category = category;
+  } // MappedCategory(MappedBoard, int)
+
+  /* Copies the items out of the board so that they can be changed, once */
+  synchronized void materialize () {
+    if (this.materialized) {
+      return;
+    } // if
+    int size = this.board.size(this.category);
+    String[] locs = new String[size];
+    String[] texts = new String[size];
+    for (int i = 0; i < size; i++) {
+      locs[i] = this.board.imageLoc(this.category, i);
+      texts[i] = this.board.text(this.category, i);
+    } // for
+    AssociativeArray<String,String> copy;
+    if (this.board.concurrent) {
+      copy = new ConcurrentAssociativeArray<String,String>();
+    } else {
+      copy = new AssociativeArray<String,String>(size);
+    } // if/else
+    copy.setAll(locs, texts);
+    this.arr = copy;
+    this.materialized = true;
+  } // materialize()
+
+  public void addItem (String imageLoc, String text) {
+    this.materialize();
+    super.addItem(imageLoc, text);
+  } // addItem(String, String)
+
+  public void addItems (String[] imageLocs, String[] texts) {
+    this.materialize();
+    super.addItems(imageLocs, texts);
+  } // addItems(String[], String[])
+
+  AACCategory snapshot() {
+    if (this.materialized) {
+      return super.snapshot();
+    } // if
+    // The board never changes, so a fresh view of it will do
+    return new MappedCategory(this.board, this.category);
+  } // snapshot()
+
+  public String getText(String imageLoc) {
+    if (this.materialized) {
+      return super.getText(imageLoc);
+    } // if
+    int i = this.board.find(this.category, imageLoc);
+    return (i < 0) ? "Error" : this.board.text(this.category, i);
+  } // getText(String)
+
+  public boolean hasImage(String imageLoc) {
+    if (this.materialized) {
+      return super.hasImage(imageLoc);
+    } // if
+    return this.board.find(this.category, imageLoc) >= 0;
+  } // hasImage(String)
+
+  public String[] getImages() {
+    if (this.materialized) {
+      return super.getImages();
+    } // if
+    return this.images().toArray(new String[this.board.size(this.category)]);
+  } // getImages()
+
+  public Collection<String> images() {
+    if (this.materialized) {
+      return super.images();
+    } // if
+    return new AbstractList<String>() {
+      public String get(int i) {
+        return board.imageLoc(category, i);
+      } // get(int)
+
+      public int size() {
+        return board.size(category);
+      } // size()
+    };
+  } // images()
+
+  public Collection<Map.Entry<String,String>> items() {
+    if (this.materialized) {
+      return super.items();
+    } // if
+    return new AbstractList<Map.Entry<String,String>>() {
+      public Map.Entry<String,String> get(int i) {
+        return new AbstractMap.SimpleImmutableEntry<String,String>(
+            board.imageLoc(category, i), board.text(category, i));
+      } // get(int)
+
+      public int size() {
+        return board.size(category);
+      } // size()
+    };
+  } // items()
+} // class MappedCategory
@@ -0,0 +1,129 @@
+package structures;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The metrics that the AAC keeps about itself. Metrics are off unless the
+ * JVM is started with -Daac.metrics=true. Every hook is guarded by
+ * ENABLED, which is a constant, so when metrics are off the JIT drops the
+ * hooks along with their calls to System.nanoTime().
+ *
+ * When on, each histogram is registered as a JMX MBean named
+ * structures:type=Metrics,name=..., and -Daac.metrics.dumpSeconds=N also
+ * prints every histogram to standard error every N seconds.
+ *
+ * @author Joyce Gill
+ */
+public class Metrics {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * Whether metrics are being collected.
+   */
+  public static final boolean ENABLED = Boolean.getBoolean("aac.metrics");
+
+  /* AssociativeArray */
+  public static final Histogram GET = new Histogram("AssociativeArray.get", "ns");
+  public static final Histogram SET = new Histogram("AssociativeArray.set", "ns");
+  public static final Histogram FIND = new Histogram("AssociativeArray.find", "ns");
+  public static final Histogram PROBES = new Histogram("AssociativeArray.probes", "slots");
+  public static final Histogram RESIZES = new Histogram("AssociativeArray.resize", "capacity");
+
+  /* AACMappings */
+  public static final Histogram LOAD = new Histogram("AACMappings.load", "ns");
+  public static final Histogram WRITE = new Histogram("AACMappings.writeToFile", "ns");
+
+  /*
+   * AAC: from a click until its images are shown, with its lookup and
+   * image phases; speech is only queued by then. TAP_SPEAK times each
+   * utterance on the speech thread, from start to end, apart from TAP
+   */
+  public static final Histogram TAP = new Histogram("AAC.tap", "ns");
+  public static final Histogram TAP_LOOKUP = new Histogram("AAC.tap.lookup", "ns");
+  public static final Histogram TAP_RENDER = new Histogram("AAC.tap.loadImages", "ns");
+  public static final Histogram TAP_SPEAK = new Histogram("AAC.tap.speak", "ns");
+
+  /* BoardServer: from a request arriving to its response being sent */
+  public static final Histogram SERVE = new Histogram("BoardServer.request", "ns");
+
+  /**
+   * Every histogram, in the order in which they are reported.
+   */
+  static final Histogram[] ALL = {
+    GET, SET, FIND, PROBES, RESIZES, LOAD, WRITE, TAP, TAP_LOOKUP, TAP_RENDER, TAP_SPEAK,
+    SERVE
+  };
+
+  static {
+    if (ENABLED) {
+      register();
+      long seconds = Long.getLong("aac.metrics.dumpSeconds", 0);
+      if (seconds > 0) {
+        startDump(System.err, seconds);
+      } // if
+    } // if
+  } // static
+
+  // +----------------+----------------------------------------------
+  // | Public Methods |
+  // +----------------+
+
+  /**
+   * The time to pass to Histogram.recordSince, or 0 when metrics are off.
+   */
+  public static long start() {
+    return ENABLED ? System.nanoTime() : 0;
+  } // start()
+
+  /**
+   * Print every histogram to pen, one per line.
+   */
+  public static void dump(PrintStream pen) {
+    StringBuilder report = new StringBuilder("-- metrics --\n");
+    for (Histogram histogram : ALL) {
+      report.append(histogram).append('\n');
+    } // for
+    pen.print(report);
+    pen.flush();
+  } // dump(PrintStream)
+
+  /**
+   * Print every histogram to pen every period seconds, on a daemon thread.
+   */
+  public static ScheduledExecutorService startDump(PrintStream pen, long period) {
+    ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(task -> {
+      Thread thread = new Thread(task, "metrics-dump");
+      thread.setDaemon(true);
+      return thread;
+    });
+    timer.scheduleAtFixedRate(() -> dump(pen), period, period, TimeUnit.SECONDS);
+    return timer;
+  } // startDump(PrintStream, long)
+
+  // +-----------------+---------------------------------------------
+  // | Private Methods |
+  // +-----------------+
+
+  /**
+   * Register every histogram with the platform MBean server.
+   */
+  static void register() {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      for (Histogram histogram : ALL) {
+        server.registerMBean(histogram,
+            new ObjectName("structures:type=Metrics,name=" + histogram.getName()));
+      } // for
+    } catch (Exception e) {
+      System.err.println("Error: unable to register metrics: " + e);
+    } // try/catch
+  } // register()
+} // class Metrics
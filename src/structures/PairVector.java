@@ -0,0 +1,175 @@
+package structures;
+
+/**
+ * An immutable sequence of pairs, held in a tree of 32-way nodes, so that
+ * appending or replacing a pair copies one node on each of at most a few
+ * levels (four for a million pairs) rather than the whole sequence.
+ * Removed pairs are left as null holes.
+ *
+ * A change made with an edit token may change the nodes it created with
+ * the same token in place, so a batch of changes made under one token
+ * copies each node at most once. Once a vector has been published, its
+ * token must not be used again.
+ *
+ * @author Joyce Gill
+ */
+final class PairVector<K, V> {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The bits of a position used at each level, and the width of a node.
+   */
+  static final int BITS = 5;
+  static final int WIDTH = 1 << BITS;
+  static final int MASK = WIDTH - 1;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The number of positions used, holes included.
+   */
+  final int count;
+
+  /**
+   * The shift of the root's level: 0 if the root holds pairs.
+   */
+  final int shift;
+
+  /**
+   * The root node.
+   */
+  final Node root;
+
+  /**
+   * A node: pairs at level 0, child nodes above it, and the token of the
+   * batch that made it.
+   */
+  static final class Node {
+    final Object edit;
+    final Object[] slots;
+
+    Node(Object edit, Object[] slots) {
+      this.edit = edit;
+      this.slots = slots;
+    } // Node(Object, Object[])
+  } // class Node
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create an empty vector.
+   */
+  PairVector() {
+    this(0, 0, new Node(null, new Object[WIDTH]));
+  } // PairVector()
+
+  PairVector(int count, int shift, Node root) {
+    this.count = count;
+    this.shift = shift;
+    this.root = root;
+  } // PairVector(int, int, Node)
+
+  // +-------+-------------------------------------------------------
+  // | Reads |
+  // +-------+
+
+  /**
+   * The pair at position i, or null if it was removed.
+   */
+  @SuppressWarnings({"unchecked"})
+  KVPair<K, V> get(int i) {
+    return (KVPair<K, V>) this.leaf(i)[i & MASK];
+  } // get(int)
+
+  /**
+   * The slots of the level-0 node that holds position i, so that a walk
+   * over the positions descends the tree once every WIDTH pairs.
+   */
+  Object[] leaf(int i) {
+    Node node = this.root;
+    for (int level = this.shift; level > 0; level -= BITS) {
+      node = (Node) node.slots[(i >>> level) & MASK];
+    } // for
+    return node.slots;
+  } // leaf(int)
+
+  // +--------+------------------------------------------------------
+  // | Writes |
+  // +--------+
+
+  /**
+   * This vector with pair added at the end.
+   */
+  PairVector<K, V> append(KVPair<K, V> pair, Object edit) {
+    int i = this.count;
+    if (i == (WIDTH << this.shift)) {
+      // The tree is full, so it gains a level
+      Object[] slots = new Object[WIDTH];
+      slots[0] = this.root;
+      slots[1] = path(this.shift, pair, edit);
+      return new PairVector<K, V>(i + 1, this.shift + BITS, new Node(edit, slots));
+    } // if
+    return new PairVector<K, V>(i + 1, this.shift, append(this.root, this.shift, i, pair, edit));
+  } // append(KVPair, Object)
+
+  /**
+   * This vector with the pair at position i replaced by pair, which may be
+   * null to leave a hole.
+   */
+  PairVector<K, V> set(int i, KVPair<K, V> pair, Object edit) {
+    return new PairVector<K, V>(this.count, this.shift, set(this.root, this.shift, i, pair, edit));
+  } // set(int, KVPair, Object)
+
+  // +-----------------+---------------------------------------------
+  // | Private Methods |
+  // +-----------------+
+
+  /**
+   * node, or a copy of it if edit does not own it.
+   */
+  static Node editable(Node node, Object edit) {
+    if (edit != null && node.edit == edit) {
+      return node;
+    } // if
+    return new Node(edit, node.slots.clone());
+  } // editable(Node, Object)
+
+  /**
+   * A new branch down to level 0 whose first pair is pair.
+   */
+  static Node path(int level, Object pair, Object edit) {
+    Object[] slots = new Object[WIDTH];
+    slots[0] = (level == 0) ? pair : path(level - BITS, pair, edit);
+    return new Node(edit, slots);
+  } // path(int, Object, Object)
+
+  static Node append(Node node, int level, int i, Object pair, Object edit) {
+    Node copy = editable(node, edit);
+    int slot = (i >>> level) & MASK;
+    if (level == 0) {
+      copy.slots[slot] = pair;
+    } else if (copy.slots[slot] == null) {
+      copy.slots[slot] = path(level - BITS, pair, edit);
+    } else {
+      copy.slots[slot] = append((Node) copy.slots[slot], level - BITS, i, pair, edit);
+    } // if/else
+    return copy;
+  } // append(Node, int, int, Object, Object)
+
+  static Node set(Node node, int level, int i, Object pair, Object edit) {
+    Node copy = editable(node, edit);
+    int slot = (i >>> level) & MASK;
+    if (level == 0) {
+      copy.slots[slot] = pair;
+    } else {
+      copy.slots[slot] = set((Node) copy.slots[slot], level - BITS, i, pair, edit);
+    } // if/else
+    return copy;
+  } // set(Node, int, int, Object, Object)
+} // class PairVector
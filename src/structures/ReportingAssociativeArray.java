@@ -3,7 +3,9 @@ import java.io.PrintWriter;
 
 /**
  * An extension of the AssociativeArray class that reports each
- * step it takes.
+ * step it takes. Reports go through a TraceRecorder, so an operation
+ * only copies a few references into a buffer and a background thread
+ * does the printing.
  *
  * @author Samuel A. Rebelsky
  */
@@ -23,31 +25,61 @@ public class ReportingAssociativeArray<K,V> extends AssociativeArray<K,V> {
    */
   PrintWriter pen;
 
+  /**
+   * What records and prints the reports.
+   */
+  TraceRecorder recorder;
+
   // +--------------+------------------------------------------------
   // | Constructors |
   // +--------------+
 
   /**
    * Create a new ReportingAssociativeArray named `name` that 
-   * prints reports of all actions using `pen`.
+   * prints reports of all actions using `pen`. Arrays that print to
+   * the same pen share one recorder.
    */
   public ReportingAssociativeArray(String name, PrintWriter pen) {
+    this(name, TraceRecorder.shared(pen));
+  } // ReportingAssociativeArray
+
+  /**
+   * Create a new ReportingAssociativeArray named `name` that reports
+   * through `recorder`, which may be shared with other arrays and sets
+   * the sampling and verbosity.
+   */
+  public ReportingAssociativeArray(String name, TraceRecorder recorder) {
     super();
     this.name = name;
-    this.pen = pen;
+    this.recorder = recorder;
+    this.pen = recorder.pen;
   } // ReportingAssociativeArray
 
   // +---------+-----------------------------------------------------
   // | Methods |
   // +---------+
 
+  /**
+   * Wait until every report made so far has been printed.
+   */
+  public void flush() throws InterruptedException {
+    recorder.flush();
+  } // flush()
+
+  /**
+   * Print the outstanding reports and stop reporting. This closes the
+   * recorder, so it also stops the reports of any array that shares it.
+   */
+  public void close() throws InterruptedException {
+    recorder.close();
+  } // close()
+
   /**
    * Set a value.
    */
   public void set(K key, V value) {
-    pen.println(name + ".set(" + key + ", " + value + ")");
     super.set(key, value);
-    pen.println("  " + name + ": " + this.toString());
+    recorder.record(name, TraceRecorder.Op.SET, key, value, null, this);
   } // set (K,V)
 
   /**
@@ -57,26 +89,31 @@ public class ReportingAssociativeArray<K,V> extends AssociativeArray<K,V> {
    *   when the key does not appear in the associative array.
    */
   public V get(K key) throws KeyNotFoundException {
-    pen.print(name + ".get(" + key + ") = ");
-    pen.flush();
     try {
       V value = super.get(key);
-      pen.println(value);
+      recorder.record(name, TraceRecorder.Op.GET, key, null, value, this);
       return value;
     } catch (KeyNotFoundException knfe) {
-      pen.println("** ERROR **");
+      recorder.record(name, TraceRecorder.Op.GET, key, null, "** ERROR **", this);
       throw knfe;
     } // try/catch
   } // get(K)
 
+  /**
+   * Get the value associated with key, or defaultValue if there is none.
+   */
+  public V getOrDefault(K key, V defaultValue) {
+    V value = super.getOrDefault(key, defaultValue);
+    recorder.record(name, TraceRecorder.Op.GET_OR_DEFAULT, key, defaultValue, value, this);
+    return value;
+  } // getOrDefault(K, V)
+
   /**
    * Determine if key appears in the associative array.
    */
   public boolean hasKey(K key) {
-    pen.print(name + ".hasKey(" + key + ") = ");
-    pen.flush();
     boolean result = super.hasKey(key);
-    pen.println(result);
+    recorder.record(name, TraceRecorder.Op.HAS_KEY, key, null, result, this);
     return result;
   } // hasKey(K)
 
@@ -86,18 +123,16 @@ public class ReportingAssociativeArray<K,V> extends AssociativeArray<K,V> {
    * in the associative array, does nothing.
    */
   public void remove(K key) {
-    pen.println(name + ".remove(" + key + ")");
     super.remove(key);
-    pen.println("  " + name + ": " + this.toString());
+    recorder.record(name, TraceRecorder.Op.REMOVE, key, null, null, this);
   } // remove(K)
 
   /**
    * Determine how many values are in the associative array.
    */
   public int size() {
-    pen.print(name + ".size() = ");
     int size = super.size();    // No, not your soda
-    pen.println(size);
+    recorder.record(name, TraceRecorder.Op.SIZE, null, null, size, this);
     return size;
   } // size()
 } // ReportingAssociativeArray
\ No newline at end of file
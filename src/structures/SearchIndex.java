@@ -0,0 +1,374 @@
+package structures;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the items of a board whose text has a word starting with what has
+ * been typed so far, in any category.
+ *
+ * Every start of a word in the text of an item is an entry: a long that
+ * holds the number of the item and where in its text the word starts.
+ * The entries are kept sorted by the text from that point on, so the
+ * entries for a prefix are next to each other, and finding the first k of
+ * them takes a binary search and k steps. Texts are compared a character
+ * at a time in lower case, so the index holds the texts themselves rather
+ * than lower-case copies.
+ *
+ * Items added after the index is built go into a small sorted list of
+ * their own, which is merged into the rest once it holds MERGE_AT
+ * entries, so an add costs O(MERGE_AT) rather than O(n).
+ *
+ * An item whose text changes is retired rather than taken out: its image
+ * is cleared, searches pass over its entries, and the next merge drops
+ * them.
+ *
+ * @author Joyce Gill
+ */
+public class SearchIndex {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The number of recent entries kept apart before they are merged.
+   */
+  static final int MERGE_AT = 4096;
+
+  /**
+   * The bits of an entry that hold where the word starts.
+   */
+  static final int OFFSET_BITS = 16;
+  static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The image and the text of each item. A retired item keeps its text,
+   * which its entries are still sorted by, but not its image.
+   */
+  String[] locs = new String[16];
+  String[] texts = new String[16];
+  int items;
+
+  /**
+   * The sorted entries, and the sorted entries added since the last merge.
+   */
+  long[] entries = new long[0];
+  long[] recent = new long[16];
+  int recentCount;
+
+  // +----------------+----------------------------------------------
+  // | Public Methods |
+  // +----------------+
+
+  /**
+   * Add the item imageLoc, which says text.
+   */
+  public synchronized void add(String imageLoc, String text) {
+    int item = this.item(imageLoc, text);
+    for (int i = 0; i < text.length() && i <= OFFSET_MASK; i++) {
+      if (isWordStart(text, i)) {
+        this.insertRecent(entry(item, i));
+      } // if
+    } // for
+    if (this.recentCount >= MERGE_AT) {
+      this.merge();
+    } // if
+  } // add(String, String)
+
+  /**
+   * Retire the latest item that has imageLoc saying text, if there is
+   * one, so that it is no longer found. This looks through the items,
+   * but texts change far less often than items are added or found.
+   */
+  public synchronized void retire(String imageLoc, String text) {
+    for (int item = this.items - 1; item >= 0; item--) {
+      if (imageLoc.equals(this.locs[item]) && text.equals(this.texts[item])) {
+        this.locs[item] = null;
+        return;
+      } // if
+    } // for
+  } // retire(String, String)
+
+  /**
+   * Add many items at once: the image imageLocs[i] says texts[i]. Sorting
+   * them all together is much quicker than adding them one at a time.
+   */
+  public synchronized void addAll(String[] imageLocs, String[] texts) {
+    long[] batch = new long[16];
+    int count = 0;
+    for (int n = 0; n < imageLocs.length; n++) {
+      int item = this.item(imageLocs[n], texts[n]);
+      String text = texts[n];
+      for (int i = 0; i < text.length() && i <= OFFSET_MASK; i++) {
+        if (isWordStart(text, i)) {
+          if (count == batch.length) {
+            batch = Arrays.copyOf(batch, count * 2);
+          } // if
+          batch[count++] = entry(item, i);
+        } // if
+      } // for
+    } // for
+    this.sort(batch, count);
+    this.merge();
+    this.entries = this.mergeSorted(this.entries, this.entries.length, batch, count);
+  } // addAll(String[], String[])
+
+  /**
+   * The first k items, by image and text, with a word that starts with
+   * prefix, in order of the text from that word on. Each image is listed
+   * once.
+   */
+  public synchronized List<Map.Entry<String,String>> search(String prefix, int k) {
+    String key = lower(prefix.trim());
+    ArrayList<Map.Entry<String,String>> found = new ArrayList<Map.Entry<String,String>>();
+    if (key.isEmpty() || k <= 0) {
+      return found;
+    } // if
+    HashSet<String> seen = new HashSet<String>();
+    int i = this.lowerBound(this.entries, this.entries.length, key);
+    int j = this.lowerBound(this.recent, this.recentCount, key);
+    while (found.size() < k) {
+      boolean inEntries = (i < this.entries.length) && this.startsWith(this.entries[i], key);
+      boolean inRecent = (j < this.recentCount) && this.startsWith(this.recent[j], key);
+      long next;
+      if (inEntries && (!inRecent || this.compare(this.entries[i], this.recent[j]) <= 0)) {
+        next = this.entries[i++];
+      } else if (inRecent) {
+        next = this.recent[j++];
+      } else {
+        break;
+      } // if/else
+      int item = item(next);
+      if (this.locs[item] != null && seen.add(this.locs[item])) {
+        found.add(new AbstractMap.SimpleImmutableEntry<String,String>(this.locs[item],
+            this.texts[item]));
+      } // if
+    } // while
+    return found;
+  } // search(String, int)
+
+  /**
+   * The number of items and of entries.
+   */
+  public synchronized String toString() {
+    return this.items + " items, " + (this.entries.length + this.recentCount) + " words";
+  } // toString()
+
+  // +-----------------+---------------------------------------------
+  // | Private Methods |
+  // +-----------------+
+
+  /**
+   * Store a new item and return its number.
+   */
+  int item(String imageLoc, String text) {
+    if (this.items == this.locs.length) {
+      int size = this.items * 2;
+      this.locs = Arrays.copyOf(this.locs, size);
+      this.texts = Arrays.copyOf(this.texts, size);
+    } // if
+    this.locs[this.items] = imageLoc;
+    this.texts[this.items] = text;
+    return this.items++;
+  } // item(String, String)
+
+  /**
+   * text with each character in lower case, as the index compares them.
+   */
+  static String lower(String text) {
+    char[] chars = new char[text.length()];
+    for (int i = 0; i < chars.length; i++) {
+      chars[i] = Character.toLowerCase(text.charAt(i));
+    } // for
+    return new String(chars);
+  } // lower(String)
+
+  /**
+   * Determine whether a word starts at i in text.
+   */
+  static boolean isWordStart(String text, int i) {
+    return Character.isLetterOrDigit(text.charAt(i))
+        && (i == 0 || !Character.isLetterOrDigit(text.charAt(i - 1)));
+  } // isWordStart(String, int)
+
+  /**
+   * The entry for the word at offset in item, and back again.
+   */
+  static long entry(int item, int offset) {
+    return ((long) item << OFFSET_BITS) | offset;
+  } // entry(int, int)
+
+  static int item(long entry) {
+    return (int) (entry >>> OFFSET_BITS);
+  } // item(long)
+
+  static int offset(long entry) {
+    return (int) (entry & OFFSET_MASK);
+  } // offset(long)
+
+  /**
+   * Compare the text of two entries from their words on, breaking ties by
+   * the order the items were added.
+   */
+  int compare(long a, long b) {
+    String x = this.texts[item(a)];
+    String y = this.texts[item(b)];
+    int i = offset(a);
+    int j = offset(b);
+    while (i < x.length() && j < y.length()) {
+      int diff = Character.toLowerCase(x.charAt(i++)) - Character.toLowerCase(y.charAt(j++));
+      if (diff != 0) {
+        return diff;
+      } // if
+    } // while
+    int diff = (x.length() - i) - (y.length() - j);
+    return (diff != 0) ? diff : Long.compare(a, b);
+  } // compare(long, long)
+
+  /**
+   * Compare the text of an entry from its word on with key, which is in
+   * lower case.
+   */
+  int compare(long a, String key) {
+    String x = this.texts[item(a)];
+    int i = offset(a);
+    int j = 0;
+    while (i < x.length() && j < key.length()) {
+      int diff = Character.toLowerCase(x.charAt(i++)) - key.charAt(j++);
+      if (diff != 0) {
+        return diff;
+      } // if
+    } // while
+    return (x.length() - i) - (key.length() - j);
+  } // compare(long, String)
+
+  /**
+   * Determine whether the text of an entry, from its word on, starts with
+   * key, which is in lower case.
+   */
+  boolean startsWith(long a, String key) {
+    String x = this.texts[item(a)];
+    int i = offset(a);
+    if (x.length() - i < key.length()) {
+      return false;
+    } // if
+    for (int j = 0; j < key.length(); j++) {
+      if (Character.toLowerCase(x.charAt(i + j)) != key.charAt(j)) {
+        return false;
+      } // if
+    } // for
+    return true;
+  } // startsWith(long, String)
+
+  /**
+   * The index of the first of the count sorted entries that is not less
+   * than key.
+   */
+  int lowerBound(long[] sorted, int count, String key) {
+    int lo = 0;
+    int hi = count;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (this.compare(sorted[mid], key) < 0) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      } // if/else
+    } // while
+    return lo;
+  } // lowerBound(long[], int, String)
+
+  /**
+   * Put entry in its place among the recent entries.
+   */
+  void insertRecent(long entry) {
+    if (this.recentCount == this.recent.length) {
+      this.recent = Arrays.copyOf(this.recent, this.recentCount * 2);
+    } // if
+    int lo = 0;
+    int hi = this.recentCount;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (this.compare(this.recent[mid], entry) < 0) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      } // if/else
+    } // while
+    System.arraycopy(this.recent, lo, this.recent, lo + 1, this.recentCount - lo);
+    this.recent[lo] = entry;
+    this.recentCount++;
+  } // insertRecent(long)
+
+  /**
+   * Merge the recent entries into the rest.
+   */
+  void merge() {
+    if (this.recentCount == 0) {
+      return;
+    } // if
+    this.entries = this.mergeSorted(this.entries, this.entries.length, this.recent,
+        this.recentCount);
+    this.recentCount = 0;
+  } // merge()
+
+  /**
+   * Merge the first m sorted entries of a and the first n of b, leaving
+   * out those of retired items.
+   */
+  long[] mergeSorted(long[] a, int m, long[] b, int n) {
+    long[] merged = new long[m + n];
+    int i = 0;
+    int j = 0;
+    int k = 0;
+    while (i < m || j < n) {
+      long next;
+      if (j >= n || (i < m && this.compare(a[i], b[j]) <= 0)) {
+        next = a[i++];
+      } else {
+        next = b[j++];
+      } // if/else
+      if (this.locs[item(next)] != null) {
+        merged[k++] = next;
+      } // if
+    } // while
+    return (k == merged.length) ? merged : Arrays.copyOf(merged, k);
+  } // mergeSorted(long[], int, long[], int)
+
+  /**
+   * Sort the first count entries of batch, by merge sort.
+   */
+  void sort(long[] batch, int count) {
+    long[] from = batch;
+    long[] to = new long[count];
+    for (int width = 1; width < count; width *= 2) {
+      for (int lo = 0; lo < count; lo += 2 * width) {
+        int mid = Math.min(lo + width, count);
+        int hi = Math.min(lo + 2 * width, count);
+        int i = lo;
+        int j = mid;
+        for (int k = lo; k < hi; k++) {
+          if (j >= hi || (i < mid && this.compare(from[i], from[j]) <= 0)) {
+            to[k] = from[i++];
+          } else {
+            to[k] = from[j++];
+          } // if/else
+        } // for
+      } // for
+      long[] swap = from;
+      from = to;
+      to = swap;
+    } // for
+    if (from != batch) {
+      System.arraycopy(from, 0, batch, 0, count);
+    } // if
+  } // sort(long[], int)
+} // class SearchIndex
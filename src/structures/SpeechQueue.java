@@ -0,0 +1,435 @@
+package structures;
+
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import javax.speech.synthesis.Synthesizer;
+
+/**
+ * Speaks text on a thread of its own, so that the thread that asks (such
+ * as the Swing event thread) never waits for the audio.
+ *
+ * Requests wait in a bounded queue. What happens when one arrives while
+ * another is being spoken depends on the policy: INTERRUPT cuts the
+ * current utterance short and drops everything waiting, QUEUE waits its
+ * turn (dropping the oldest request if the queue is full), and
+ * DROP_DUPLICATES waits its turn unless the same text is already being
+ * spoken or waiting. Listeners hear when each utterance starts, finishes,
+ * is interrupted, is dropped, or fails.
+ *
+ * Each request is handed to the speaker's prepare as it arrives, so a
+ * speaker that can synthesize ahead works on the next utterance while the
+ * current one plays.
+ *
+ * @author Joyce Gill
+ */
+public class SpeechQueue {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * What to do with a request that arrives while another is spoken.
+   */
+  public enum Policy { INTERRUPT, QUEUE, DROP_DUPLICATES }
+
+  /**
+   * What happened to an utterance.
+   */
+  public enum Kind { STARTED, DONE, INTERRUPTED, DROPPED, FAILED }
+
+  /**
+   * Something that can speak.
+   */
+  public interface Speaker {
+    /**
+     * Speak text, returning when it has been spoken or cancelled.
+     */
+    void speak(String text) throws Exception;
+
+    /**
+     * Cut short the utterance being spoken, from another thread. A cancel
+     * that comes after reset but before speak has started must stop the
+     * next utterance all the same.
+     */
+    void cancel();
+
+    /**
+     * Forget any cancel so far. The queue calls this, with its lock, just
+     * before it counts an utterance as being spoken, so that every cancel
+     * after it is meant for that utterance.
+     */
+    default void reset() {
+    } // reset()
+
+    /**
+     * Get ready to speak text soon, in the background, so that it can
+     * start as soon as what is being spoken now ends.
+     */
+    default void prepare(String text) {
+    } // prepare(String)
+  } // interface Speaker
+
+  /**
+   * Something that happened to an utterance.
+   */
+  public static class Event {
+    public final Kind kind;
+    public final String text;
+
+    /**
+     * The number of requests still waiting when the event happened.
+     */
+    public final int waiting;
+
+    Event(Kind kind, String text, int waiting) {
+      this.kind = kind;
+      this.text = text;
+      this.waiting = waiting;
+    } // Event(Kind, String, int)
+
+    public String toString() {
+      return this.kind + " \"" + this.text + "\"";
+    } // toString()
+  } // class Event
+
+  /**
+   * A request waiting to be spoken.
+   */
+  static class Request {
+    final String text;
+    final long interruptions;
+
+    Request(String text, long interruptions) {
+      this.text = text;
+      this.interruptions = interruptions;
+    } // Request(String, long)
+  } // class Request
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * What speaks.
+   */
+  final Speaker speaker;
+
+  /**
+   * What to do with a request that arrives while another is spoken.
+   */
+  volatile Policy policy;
+
+  /**
+   * The requests waiting to be spoken.
+   */
+  final ArrayBlockingQueue<Request> waiting;
+
+  /**
+   * The text being spoken, or null, and whether it has been interrupted.
+   * Both are guarded by this queue's lock.
+   */
+  String speaking;
+  boolean interrupted;
+
+  /**
+   * The number of interruptions so far. Each request notes it, so that the
+   * speech thread can tell whether the request it just took was dropped
+   * while it took it.
+   */
+  long interruptions;
+
+  /**
+   * Who hears about each event, and the thread they hear it on.
+   */
+  final Consumer<Event> listener;
+  final Executor notifyOn;
+
+  /**
+   * The thread that speaks.
+   */
+  final Thread thread;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a queue of at most capacity requests for speaker, following
+   * policy, whose events are passed to listener by tasks given to
+   * notifyOn (such as EventQueue::invokeLater).
+   */
+  public SpeechQueue(Speaker speaker, int capacity, Policy policy, Consumer<Event> listener,
+      Executor notifyOn) {
+    this.speaker = speaker;
+    this.waiting = new ArrayBlockingQueue<Request>(capacity);
+    this.policy = policy;
+    this.listener = listener;
+    this.notifyOn = notifyOn;
+    this.thread = new Thread(this::run, "speech");
+    this.thread.setDaemon(true);
+    this.thread.start();
+  } // SpeechQueue(Speaker, int, Policy, Consumer<Event>, Executor)
+
+  // +----------------+----------------------------------------------
+  // | Static Methods |
+  // +----------------+
+
+  /**
+   * A speaker for a JSAPI synthesizer, which has been allocated and
+   * resumed.
+   */
+  public static Speaker speaker(Synthesizer synthesizer) {
+    return new Speaker() {
+      volatile boolean cancelled;
+
+      public void speak(String text) throws Exception {
+        synthesizer.speakPlainText(text, null);
+        if (this.cancelled) {
+          // Cancelled before it was queued, when cancelAll had nothing to stop
+          synthesizer.cancelAll();
+        } // if
+        synthesizer.waitEngineState(Synthesizer.QUEUE_EMPTY);
+      } // speak(String)
+
+      public void cancel() {
+        this.cancelled = true;
+        synthesizer.cancelAll();
+      } // cancel()
+
+      public void reset() {
+        this.cancelled = false;
+      } // reset()
+    };
+  } // speaker(Synthesizer)
+
+  /**
+   * A speaker that waits for ready, so that requests made while the voice
+   * is still loading are spoken once it has loaded.
+   */
+  public static Speaker whenReady(Future<Speaker> ready) {
+    return new Speaker() {
+      volatile boolean cancelled;
+
+      public void speak(String text) throws Exception {
+        Speaker speaker = ready.get();
+        if (!this.cancelled) {
+          speaker.speak(text);
+        } // if
+      } // speak(String)
+
+      public void cancel() {
+        this.cancelled = true;
+        if (ready.isDone()) {
+          try {
+            ready.get().cancel();
+          } catch (Exception e) {
+            // It never loaded, so there is nothing to cancel
+          } // try/catch
+        } // if
+      } // cancel()
+
+      public void reset() {
+        this.cancelled = false;
+        if (ready.isDone()) {
+          try {
+            ready.get().reset();
+          } catch (Exception e) {
+            // It never loaded, so there is nothing to reset
+          } // try/catch
+        } // if
+      } // reset()
+
+      public void prepare(String text) {
+        if (ready.isDone()) {
+          try {
+            ready.get().prepare(text);
+          } catch (Exception e) {
+            // It never loaded, so there is nothing to prepare
+          } // try/catch
+        } // if
+      } // prepare(String)
+    };
+  } // whenReady(Future<Speaker>)
+
+  /**
+   * The policy named by the aac.speechPolicy property, or INTERRUPT.
+   */
+  public static Policy defaultPolicy() {
+    try {
+      return Policy.valueOf(System.getProperty("aac.speechPolicy", "INTERRUPT"));
+    } catch (IllegalArgumentException e) {
+      System.err.println("Error: unknown speech policy, using INTERRUPT");
+      return Policy.INTERRUPT;
+    } // try/catch
+  } // defaultPolicy()
+
+  // +----------------+----------------------------------------------
+  // | Public Methods |
+  // +----------------+
+
+  /**
+   * Ask for text to be spoken, following the policy. Returns at once.
+   */
+  public void say(String text) {
+    ArrayList<Request> dropped = new ArrayList<Request>();
+    Request request = null;
+    synchronized (this) {
+      switch (this.policy) {
+        case INTERRUPT:
+          this.waiting.drainTo(dropped);
+          this.interruptCurrent();
+          break;
+        case DROP_DUPLICATES:
+          if (text.equals(this.speaking) || this.isWaiting(text)) {
+            dropped.add(new Request(text, this.interruptions));
+            text = null;
+          } // if
+          break;
+        default:
+          break;
+      } // switch
+      if (text != null) {
+        request = new Request(text, this.interruptions);
+        if (!this.waiting.offer(request)) {
+          // Full: the oldest request has waited too long to be worth saying
+          dropped.add(this.waiting.poll());
+          this.waiting.offer(request);
+        } // if
+      } // if
+    } // synchronized
+    for (Request gone : dropped) {
+      this.publish(Kind.DROPPED, gone.text);
+    } // for
+    if (request != null) {
+      // Synthesize it while whatever is ahead of it plays
+      this.speaker.prepare(request.text);
+    } // if
+  } // say(String)
+
+  /**
+   * Stop speaking and drop everything waiting.
+   */
+  public void cancelAll() {
+    ArrayList<Request> dropped = new ArrayList<Request>();
+    synchronized (this) {
+      this.waiting.drainTo(dropped);
+      this.interruptCurrent();
+    } // synchronized
+    for (Request gone : dropped) {
+      this.publish(Kind.DROPPED, gone.text);
+    } // for
+  } // cancelAll()
+
+  /**
+   * Change the policy for later requests.
+   */
+  public void setPolicy(Policy policy) {
+    this.policy = policy;
+  } // setPolicy(Policy)
+
+  /**
+   * Determine whether anything is being spoken or waiting.
+   */
+  public synchronized boolean isBusy() {
+    return this.speaking != null || !this.waiting.isEmpty();
+  } // isBusy()
+
+  /**
+   * Stop the speech thread, dropping whatever is waiting.
+   */
+  public void close() {
+    this.cancelAll();
+    this.thread.interrupt();
+  } // close()
+
+  // +-----------------+---------------------------------------------
+  // | Private Methods |
+  // +-----------------+
+
+  /**
+   * The body of the speech thread: speak each request in turn.
+   */
+  void run() {
+    while (true) {
+      Request request;
+      try {
+        request = this.waiting.take();
+      } catch (InterruptedException e) {
+        return;
+      } // try/catch
+      String text = request.text;
+      boolean stale;
+      synchronized (this) {
+        // Interrupted between take and now, when it still counted as waiting
+        stale = (request.interruptions != this.interruptions);
+        if (!stale) {
+          // Any cancel from here on is for this utterance, even one before speak starts
+          this.speaker.reset();
+          this.speaking = text;
+          this.interrupted = false;
+        } // if
+      } // synchronized
+      if (stale) {
+        this.publish(Kind.DROPPED, text);
+        continue;
+      } // if
+      this.publish(Kind.STARTED, text);
+      long start = Metrics.start();
+      Kind outcome;
+      try {
+        this.speaker.speak(text);
+        outcome = Kind.DONE;
+      } catch (Exception e) {
+        e.printStackTrace();
+        outcome = Kind.FAILED;
+      } // try/catch
+      if (Metrics.ENABLED) {
+        Metrics.TAP_SPEAK.recordSince(start);
+      } // if
+      synchronized (this) {
+        if (this.interrupted && outcome == Kind.DONE) {
+          outcome = Kind.INTERRUPTED;
+        } // if
+        this.speaking = null;
+      } // synchronized
+      this.publish(outcome, text);
+    } // while
+  } // run()
+
+  /**
+   * Determine whether text is waiting. Called with the lock.
+   */
+  boolean isWaiting(String text) {
+    for (Request request : this.waiting) {
+      if (request.text.equals(text)) {
+        return true;
+      } // if
+    } // for
+    return false;
+  } // isWaiting(String)
+
+  /**
+   * Cut short the utterance being spoken, if any. Called with the lock.
+   */
+  void interruptCurrent() {
+    this.interruptions++;
+    if (this.speaking != null && !this.interrupted) {
+      this.interrupted = true;
+      this.speaker.cancel();
+    } // if
+  } // interruptCurrent()
+
+  /**
+   * Tell the listener about an event, on its thread.
+   */
+  void publish(Kind kind, String text) {
+    if (this.listener == null) {
+      return;
+    } // if
+    Event event = new Event(kind, text, this.waiting.size());
+    this.notifyOn.execute(() -> this.listener.accept(event));
+  } // publish(Kind, String)
+} // class SpeechQueue
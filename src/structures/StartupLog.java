@@ -0,0 +1,45 @@
+package structures;
+
+import java.io.PrintStream;
+
+/**
+ * Times the phases of starting up, which may run on several threads, and
+ * logs each one as it finishes.
+ *
+ * @author Joyce Gill
+ */
+public class StartupLog {
+  /* Fields */
+  final long start = System.nanoTime();
+  final PrintStream out;
+
+  /* Constructor that logs to System.out */
+  public StartupLog() {
+    this(System.out);
+  } // StartupLog()
+
+  /* Constructor that logs to out */
+  public StartupLog(PrintStream out) {
+    this.out = out;
+  } // StartupLog(PrintStream)
+
+  /* The time now, to pass to phase when the phase is done */
+  public long begin() {
+    return System.nanoTime();
+  } // begin()
+
+  /* Logs that the phase called name, which began at begun, is done */
+  public void phase(String name, long begun) {
+    long now = System.nanoTime();
+    synchronized (this.out) {
+      this.out.printf("startup: %-10s %6d ms (done at %d ms, %s)%n", name,
+          (now - begun) / 1000000, (now - this.start) / 1000000,
+          Thread.currentThread().getName());
+    } // synchronized
+  } // phase(String, long)
+
+  /* The time since the log was made, in milliseconds */
+  public long elapsed() {
+    return (System.nanoTime() - this.start) / 1000000;
+  } // elapsed()
+} // class StartupLog
@@ -0,0 +1,219 @@
+package structures;
+
+/**
+ * One copy of each image path and text, shared by every board that is
+ * loaded, so that boards built from the same icon library, or categories
+ * that repeat the same words, do not each keep their own copies.
+ *
+ * Board loading passes each string it makes through share, which returns
+ * the copy already in the table if there is one, and the new string can
+ * then be collected. The table counts the duplicates it has folded away,
+ * that is the new copies it was handed while it held an equal string,
+ * and roughly how many bytes of heap they would have held, assuming a
+ * 64-bit JVM with compressed pointers and compact strings.
+ *
+ * The strings are kept in open-addressed arrays, like AssociativeArray's,
+ * split into stripes that each have their own lock, so that boards loading
+ * on several threads rarely wait for each other, and so that the table
+ * costs about two references a string rather than a hash map node.
+ *
+ * Unlike String.intern, the table is an ordinary object that can report
+ * what it saves. Its strings are kept for as long as the JVM runs, so only
+ * strings that stay loaded should go through it: the categories that a
+ * LazyBoard reads, and may later evict, do not, and neither do those that
+ * a MappedBoard decodes again each time it needs them. Run with
+ * -Daac.intern=false to turn it off.
+ *
+ * @author Joyce Gill
+ */
+public class SymbolTable {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * Whether share uses the shared table.
+   */
+  public static final boolean ENABLED = !"false".equals(System.getProperty("aac.intern"));
+
+  /**
+   * The table that share uses.
+   */
+  public static final SymbolTable SHARED = new SymbolTable();
+
+  /**
+   * The bytes of a String object, and of the header of its array.
+   */
+  static final int STRING_BYTES = 24;
+  static final int ARRAY_BYTES = 16;
+
+  /**
+   * The number of stripes, a power of two.
+   */
+  static final int STRIPES = 32;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The stripes, chosen by the low bits of a string's hash.
+   */
+  final Stripe[] stripes = new Stripe[STRIPES];
+
+  /**
+   * An open-addressed set of strings, no more than half full, and its
+   * counts: the bytes held by its strings, the number of duplicates that
+   * were replaced by them, and the bytes those duplicates held. Everything
+   * is guarded by the stripe's lock.
+   */
+  static class Stripe {
+    String[] slots = new String[16];
+    int size;
+    long held;
+    long duplicates;
+    long saved;
+  } // class Stripe
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create an empty table.
+   */
+  public SymbolTable() {
+    for (int i = 0; i < STRIPES; i++) {
+      this.stripes[i] = new Stripe();
+    } // for
+  } // SymbolTable()
+
+  // +----------------+----------------------------------------------
+  // | Static Methods |
+  // +----------------+
+
+  /**
+   * The shared copy of symbol, or symbol itself if sharing is off.
+   */
+  public static String share(String symbol) {
+    return ENABLED ? SHARED.intern(symbol) : symbol;
+  } // share(String)
+
+  /**
+   * About how many bytes of heap symbol takes.
+   */
+  static long bytes(String symbol) {
+    int perChar = 1;
+    for (int i = 0; i < symbol.length(); i++) {
+      if (symbol.charAt(i) > 0xFF) {
+        perChar = 2;
+        break;
+      } // if
+    } // for
+    return STRING_BYTES + ((ARRAY_BYTES + (long) perChar * symbol.length() + 7) & ~7L);
+  } // bytes(String)
+
+  // +----------------+----------------------------------------------
+  // | Public Methods |
+  // +----------------+
+
+  /**
+   * The copy of symbol in the table, adding symbol if there is none. A
+   * separate but equal symbol counts as a duplicate, since the caller keeps
+   * the copy and drops symbol.
+   */
+  public String intern(String symbol) {
+    int hash = symbol.hashCode();
+    hash ^= (hash >>> 16);
+    Stripe stripe = this.stripes[hash & (STRIPES - 1)];
+    synchronized (stripe) {
+      String[] slots = stripe.slots;
+      int mask = slots.length - 1;
+      int i = (hash >>> 5) & mask;
+      for (String copy = slots[i]; copy != null; copy = slots[i]) {
+        if (copy.equals(symbol)) {
+          if (copy != symbol) {
+            stripe.duplicates++;
+            stripe.saved += bytes(symbol);
+          } // if
+          return copy;
+        } // if
+        i = (i + 1) & mask;
+      } // for
+      slots[i] = symbol;
+      stripe.held += bytes(symbol);
+      if (++stripe.size * 2 > slots.length) {
+        grow(stripe);
+      } // if
+      return symbol;
+    } // synchronized
+  } // intern(String)
+
+  /**
+   * The number of distinct strings in the table.
+   */
+  public int size() {
+    int size = 0;
+    for (Stripe stripe : this.stripes) {
+      synchronized (stripe) {
+        size += stripe.size;
+      } // synchronized
+    } // for
+    return size;
+  } // size()
+
+  /**
+   * About how many bytes the duplicates folded away would have held, less
+   * what the table itself takes.
+   */
+  public long savedBytes() {
+    long saved = 0;
+    for (Stripe stripe : this.stripes) {
+      synchronized (stripe) {
+        saved += stripe.saved - ARRAY_BYTES - 4L * stripe.slots.length;
+      } // synchronized
+    } // for
+    return saved;
+  } // savedBytes()
+
+  public String toString() {
+    long held = 0;
+    long duplicates = 0;
+    long saved = 0;
+    for (Stripe stripe : this.stripes) {
+      synchronized (stripe) {
+        held += stripe.held;
+        duplicates += stripe.duplicates;
+        saved += stripe.saved;
+      } // synchronized
+    } // for
+    return this.size() + " symbols in " + held + " bytes, " + duplicates
+        + " duplicates shared, saving " + saved + " bytes (" + this.savedBytes()
+        + " after the table's own)";
+  } // toString()
+
+  // +-----------------+---------------------------------------------
+  // | Private Methods |
+  // +-----------------+
+
+  /**
+   * Double the slots of stripe. Called with its lock.
+   */
+  static void grow(Stripe stripe) {
+    String[] old = stripe.slots;
+    String[] slots = new String[old.length * 2];
+    int mask = slots.length - 1;
+    for (String symbol : old) {
+      if (symbol != null) {
+        int hash = symbol.hashCode();
+        hash ^= (hash >>> 16);
+        int i = (hash >>> 5) & mask;
+        while (slots[i] != null) {
+          i = (i + 1) & mask;
+        } // while
+        slots[i] = symbol;
+      } // if
+    } // for
+    stripe.slots = slots;
+  } // grow(Stripe)
+} // class SymbolTable
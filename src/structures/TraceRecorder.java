@@ -0,0 +1,407 @@
+package structures;
+
+import java.io.PrintWriter;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Records the operations of associative arrays without slowing them down.
+ * Each operation is copied into a slot of a preallocated ring buffer, and a
+ * background thread formats the slots and writes them out in batches.
+ *
+ * Operations are logged as deltas (the operation, its arguments and result,
+ * and the new size), not as full dumps, unless the verbosity is FULL. Only
+ * every sampleEvery-th operation is recorded. If the writer falls behind
+ * and the buffer fills, new events are dropped and counted rather than
+ * making the caller wait.
+ *
+ * The writer thread starts with the first event, and every recorder still
+ * open when the program exits is drained by a shutdown hook, so that the
+ * last events are not lost.
+ *
+ * @author Joyce Gill
+ */
+public class TraceRecorder {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * How much each event says.
+   */
+  public enum Verbosity {
+    /** The operation and its key. */
+    OPS,
+    /** The operation, its key, value and result, and the new size. */
+    VALUES,
+    /** As VALUES, plus the whole array after each change. Expensive. */
+    FULL
+  } // enum Verbosity
+
+  /**
+   * The operations that can be recorded.
+   */
+  enum Op {
+    SET, GET, GET_OR_DEFAULT, HAS_KEY, REMOVE, SIZE
+  } // enum Op
+
+  /**
+   * The default number of slots in the ring buffer.
+   */
+  static final int DEFAULT_CAPACITY = 4096;
+
+  // +---------------+-----------------------------------------------
+  // | Static Fields |
+  // +---------------+
+
+  /**
+   * The recorders made by shared(), one per pen. Guarded by itself.
+   */
+  static final Map<PrintWriter, TraceRecorder> SHARED = new IdentityHashMap<>();
+
+  /**
+   * The recorders not yet closed, which the shutdown hook drains. Guarded
+   * by itself.
+   */
+  static final Map<TraceRecorder, Boolean> OPEN = new IdentityHashMap<>();
+
+  /**
+   * Whether the shutdown hook has been added. Guarded by OPEN.
+   */
+  static boolean hooked;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * Where we print reports.
+   */
+  final PrintWriter pen;
+
+  /**
+   * How much each event says.
+   */
+  final Verbosity verbosity;
+
+  /**
+   * Record one of every sampleEvery operations.
+   */
+  final int sampleEvery;
+
+  /**
+   * The preallocated slots. Slot i % ring.length holds event i.
+   */
+  final Event[] ring;
+
+  /**
+   * The number of events ever recorded (the next one to fill) and the
+   * number ever written. Guarded by this.
+   */
+  long head;
+  long tail;
+
+  /**
+   * The number of operations seen, for sampling, and of events dropped
+   * because the buffer was full. Guarded by this.
+   */
+  long seen;
+  long dropped;
+
+  /**
+   * Whether close() has been called. Guarded by this.
+   */
+  boolean closed;
+
+  /**
+   * The background thread that drains the buffer, or null until the first
+   * event. Guarded by this.
+   */
+  Thread writer;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a recorder that writes every operation to pen at VALUES
+   * verbosity.
+   */
+  public TraceRecorder(PrintWriter pen) {
+    this(pen, Verbosity.VALUES, 1, DEFAULT_CAPACITY);
+  } // TraceRecorder(PrintWriter)
+
+  /**
+   * Create a recorder that writes one in sampleEvery operations to pen, at
+   * the given verbosity, buffering at most capacity events.
+   */
+  public TraceRecorder(PrintWriter pen, Verbosity verbosity, int sampleEvery, int capacity) {
+    if (sampleEvery < 1 || capacity < 1) {
+      throw new IllegalArgumentException("sampleEvery and capacity must be positive");
+    } // if
+    this.pen = pen;
+    this.verbosity = verbosity;
+    this.sampleEvery = sampleEvery;
+    this.ring = new Event[capacity];
+    for (int i = 0; i < capacity; i++) {
+      this.ring[i] = new Event();
+    } // for
+  } // TraceRecorder(PrintWriter, Verbosity, int, int)
+
+  // +----------------+----------------------------------------------
+  // | Static Methods |
+  // +----------------+
+
+  /**
+   * The recorder that writes every operation to pen at VALUES verbosity,
+   * shared by everyone who asks for one with the same pen, so that they
+   * share one writer thread and their lines do not interleave.
+   */
+  public static TraceRecorder shared(PrintWriter pen) {
+    synchronized (SHARED) {
+      TraceRecorder recorder = SHARED.get(pen);
+      if (recorder == null) {
+        recorder = new TraceRecorder(pen);
+        SHARED.put(pen, recorder);
+      } // if
+      return recorder;
+    } // synchronized
+  } // shared(PrintWriter)
+
+  // +----------------+----------------------------------------------
+  // | Public Methods |
+  // +----------------+
+
+  /**
+   * Wait until every event recorded so far has been written.
+   */
+  public synchronized void flush() throws InterruptedException {
+    long target = this.head;
+    while (this.tail < target && this.writer != null && this.writer.isAlive()) {
+      this.wait();
+    } // while
+  } // flush()
+
+  /**
+   * Write out what is buffered and stop the writer thread.
+   */
+  public void close() throws InterruptedException {
+    Thread thread;
+    synchronized (this) {
+      this.closed = true;
+      this.notifyAll();
+      thread = this.writer;
+    } // synchronized
+    synchronized (SHARED) {
+      SHARED.remove(this.pen, this);
+    } // synchronized
+    synchronized (OPEN) {
+      OPEN.remove(this);
+    } // synchronized
+    if (thread != null) {
+      thread.join();
+    } // if
+  } // close()
+
+  /**
+   * The number of events dropped because the buffer was full.
+   */
+  public synchronized long dropped() {
+    return this.dropped;
+  } // dropped()
+
+  // +-----------------+---------------------------------------------
+  // | Package Methods |
+  // +-----------------+
+
+  /**
+   * Record one operation on arr, which is reported under name. This copies
+   * references into a slot; nothing is formatted on the caller's thread
+   * except the full dump at FULL verbosity.
+   */
+  void record(String name, Op op, Object key, Object value, Object result,
+      AssociativeArray<?, ?> arr) {
+    String dump = null;
+    synchronized (this) {
+      if (this.closed || (this.seen++ % this.sampleEvery) != 0) {
+        return;
+      } // if
+      if (this.head - this.tail == this.ring.length) {
+        this.dropped++;
+        return;
+      } // if
+      if (this.writer == null) {
+        this.start();
+      } // if
+      if (this.verbosity == Verbosity.FULL && (op == Op.SET || op == Op.REMOVE)) {
+        dump = arr.toString();
+      } // if
+      Event event = this.ring[(int) (this.head % this.ring.length)];
+      event.name = name;
+      event.op = op;
+      event.key = key;
+      event.value = value;
+      event.result = result;
+      event.size = arr.size;
+      event.dump = dump;
+      // Wake the writer only if it may be waiting for an empty buffer
+      if (this.head++ == this.tail) {
+        this.notifyAll();
+      } // if
+    } // synchronized
+  } // record(String, Op, Object, Object, Object, AssociativeArray)
+
+  // +-----------------+---------------------------------------------
+  // | Private Methods |
+  // +-----------------+
+
+  /**
+   * Start the writer thread, and have it drained when the program exits.
+   * Called with the lock held.
+   */
+  void start() {
+    this.writer = new Thread(this::drain, "trace-writer");
+    this.writer.setDaemon(true);
+    this.writer.start();
+    synchronized (OPEN) {
+      OPEN.put(this, Boolean.TRUE);
+      if (!hooked) {
+        Runtime.getRuntime().addShutdownHook(new Thread(TraceRecorder::closeAll, "trace-shutdown"));
+        hooked = true;
+      } // if
+    } // synchronized
+  } // start()
+
+  /**
+   * Close every open recorder, writing out what they have buffered.
+   */
+  static void closeAll() {
+    TraceRecorder[] open;
+    synchronized (OPEN) {
+      open = OPEN.keySet().toArray(new TraceRecorder[0]);
+    } // synchronized
+    for (TraceRecorder recorder : open) {
+      try {
+        recorder.close();
+      } catch (InterruptedException e) {
+        return;
+      } // try/catch
+    } // for
+  } // closeAll()
+
+  /**
+   * The body of the writer thread. Slots between tail and head belong to
+   * the writer until it advances tail, so it formats them without the lock.
+   */
+  void drain() {
+    StringBuilder line = new StringBuilder();
+    while (true) {
+      long from;
+      long to;
+      synchronized (this) {
+        while (this.head == this.tail && !this.closed) {
+          try {
+            this.wait();
+          } catch (InterruptedException e) {
+            return;
+          } // try/catch
+        } // while
+        if (this.head == this.tail) {
+          return;
+        } // if
+        from = this.tail;
+        to = this.head;
+      } // synchronized
+
+      for (long i = from; i < to; i++) {
+        Event event = this.ring[(int) (i % this.ring.length)];
+        line.setLength(0);
+        event.format(line, this.verbosity);
+        this.pen.println(line);
+        event.clear();
+      } // for
+      this.pen.flush();
+
+      synchronized (this) {
+        this.tail = to;
+        this.notifyAll();
+      } // synchronized
+    } // while
+  } // drain()
+
+  // +---------------+-----------------------------------------------
+  // | Inner Classes |
+  // +---------------+
+
+  /**
+   * One slot of the ring buffer.
+   */
+  static class Event {
+    String name;
+    Op op;
+    Object key;
+    Object value;
+    Object result;
+    int size;
+    String dump;
+
+    /**
+     * Append a one-line description of this event to line.
+     */
+    void format(StringBuilder line, Verbosity verbosity) {
+      line.append(this.name).append('.');
+      switch (this.op) {
+        case SET:
+          line.append("set(").append(this.key);
+          if (verbosity != Verbosity.OPS) {
+            line.append(", ").append(this.value);
+          } // if
+          line.append(')');
+          break;
+        case GET:
+          line.append("get(").append(this.key).append(')');
+          break;
+        case GET_OR_DEFAULT:
+          line.append("getOrDefault(").append(this.key);
+          if (verbosity != Verbosity.OPS) {
+            line.append(", ").append(this.value);
+          } // if
+          line.append(')');
+          break;
+        case HAS_KEY:
+          line.append("hasKey(").append(this.key).append(')');
+          break;
+        case REMOVE:
+          line.append("remove(").append(this.key).append(')');
+          break;
+        case SIZE:
+          line.append("size()");
+          break;
+        default:
+          line.append(this.op);
+      } // switch
+      if (verbosity == Verbosity.OPS) {
+        return;
+      } // if
+      if (this.op == Op.SET || this.op == Op.REMOVE) {
+        line.append("  size=").append(this.size);
+      } else {
+        line.append(" = ").append(this.result);
+      } // if/else
+      if (this.dump != null) {
+        line.append("  ").append(this.dump);
+      } // if
+    } // format(StringBuilder, Verbosity)
+
+    /**
+     * Drop the references held by this slot.
+     */
+    void clear() {
+      this.name = null;
+      this.key = null;
+      this.value = null;
+      this.result = null;
+      this.dump = null;
+    } // clear()
+  } // class Event
+} // class TraceRecorder
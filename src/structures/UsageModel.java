@@ -0,0 +1,272 @@
+package structures;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * How often each image of a board is tapped, and which image tends to be
+ * tapped after which, so that a category can show its likeliest images on
+ * its first page.
+ *
+ * Counts decay, so that what was said lately outweighs what was said long
+ * ago: a tap counts for half as much after HALF_LIFE more taps. Rather than
+ * shrink every count on each tap, each tap adds a weight that grows by the
+ * same factor, so a tap costs O(1); when the weight grows too large, every
+ * count is scaled back down at once. Each image is scored by its own count
+ * plus BIGRAM_WEIGHT times the count of its following the image tapped
+ * just before it.
+ *
+ * The model is kept in a file next to the board, one count to a line:
+ * "1", the count and the image, or "2", the count, the earlier image and
+ * the later one, separated by tabs.
+ *
+ * @author Joyce Gill
+ */
+public class UsageModel {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The number of taps after which a tap counts half as much: the
+   * aac.usageHalfLife property, or 200.
+   */
+  public static final int HALF_LIFE = Integer.getInteger("aac.usageHalfLife", 200);
+
+  /**
+   * How much following the last tap counts, next to an image's own count.
+   */
+  static final double BIGRAM_WEIGHT = 2.0;
+
+  /**
+   * The weight past which every count is scaled back down.
+   */
+  static final double RESCALE_AT = 1e12;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The factor the weight of a tap grows by with each tap, and the weight
+   * of the next one.
+   */
+  final double growth = Math.pow(2.0, 1.0 / HALF_LIFE);
+  double weight = 1.0;
+
+  /**
+   * The decayed count of each image, and of each image following another.
+   */
+  final HashMap<String,double[]> counts = new HashMap<String,double[]>();
+  final HashMap<String,HashMap<String,double[]>> follows =
+      new HashMap<String,HashMap<String,double[]>>();
+
+  /**
+   * The image tapped last, or null.
+   */
+  String last;
+
+  /**
+   * The number of taps recorded.
+   */
+  long taps;
+
+  // +----------------+----------------------------------------------
+  // | Static Methods |
+  // +----------------+
+
+  /**
+   * The file that holds the model for board.
+   */
+  public static Path usageFor(Path board) {
+    return board.resolveSibling(board.getFileName() + ".usage");
+  } // usageFor(Path)
+
+  /**
+   * Read the model for board, or start an empty one if it has none. Lines
+   * that cannot be read are skipped.
+   */
+  public static UsageModel load(Path board) throws IOException {
+    UsageModel model = new UsageModel();
+    Path file = usageFor(board);
+    if (!Files.exists(file)) {
+      return model;
+    } // if
+    try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = in.readLine()) != null) {
+        String[] fields = line.split("\t");
+        try {
+          if (fields.length == 3 && fields[0].equals("1")) {
+            model.counts.put(fields[2], new double[] { Double.parseDouble(fields[1]) });
+          } else if (fields.length == 4 && fields[0].equals("2")) {
+            model.followers(fields[2]).put(fields[3],
+                new double[] { Double.parseDouble(fields[1]) });
+          } // if/else
+        } catch (NumberFormatException e) {
+          // Skipped, like any other line that is not a count
+        } // try/catch
+      } // while
+    } // try
+    return model;
+  } // load(Path)
+
+  // +----------------+----------------------------------------------
+  // | Public Methods |
+  // +----------------+
+
+  /**
+   * Note that imageLoc was tapped.
+   */
+  public synchronized void record(String imageLoc) {
+    add(this.counts, imageLoc, this.weight);
+    if (this.last != null) {
+      add(followers(this.last), imageLoc, this.weight);
+    } // if
+    this.last = imageLoc;
+    this.taps++;
+    this.weight *= this.growth;
+    if (this.weight > RESCALE_AT) {
+      this.rescale();
+    } // if
+  } // record(String)
+
+  /**
+   * How likely imageLoc is to be tapped next, as a decayed count.
+   */
+  public synchronized double score(String imageLoc) {
+    double score = get(this.counts, imageLoc);
+    if (this.last != null) {
+      HashMap<String,double[]> next = this.follows.get(this.last);
+      if (next != null) {
+        score += BIGRAM_WEIGHT * get(next, imageLoc);
+      } // if
+    } // if
+    return score / this.weight;
+  } // score(String)
+
+  /**
+   * Sort imageLocs so that the likeliest to be tapped next come first,
+   * leaving images that score the same in the order they were in.
+   */
+  public synchronized void rank(String[] imageLocs) {
+    if (imageLocs.length < 2 || this.counts.isEmpty()) {
+      return;
+    } // if
+    HashMap<String,Double> scores = new HashMap<String,Double>();
+    for (String loc : imageLocs) {
+      scores.put(loc, this.score(loc));
+    } // for
+    Arrays.sort(imageLocs, (a, b) -> Double.compare(scores.get(b), scores.get(a)));
+  } // rank(String[])
+
+  /**
+   * Write the model to the file next to board, replacing the old one only
+   * once the new one is complete.
+   */
+  public synchronized void save(Path board) throws IOException {
+    Path file = usageFor(board);
+    Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+    try (PrintWriter pen = new PrintWriter(Files.newBufferedWriter(temp, StandardCharsets.UTF_8))) {
+      for (Map.Entry<String,double[]> count : this.counts.entrySet()) {
+        pen.print("1\t" + (count.getValue()[0] / this.weight) + "\t" + count.getKey() + "\n");
+      } // for
+      for (Map.Entry<String,HashMap<String,double[]>> from : this.follows.entrySet()) {
+        for (Map.Entry<String,double[]> to : from.getValue().entrySet()) {
+          pen.print("2\t" + (to.getValue()[0] / this.weight) + "\t" + from.getKey() + "\t"
+              + to.getKey() + "\n");
+        } // for
+      } // for
+      if (pen.checkError()) {
+        throw new IOException("write failed");
+      } // if
+    } // try
+    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  } // save(Path)
+
+  /**
+   * A copy of the model that later taps do not change, for saving on
+   * another thread. This is O(n), but copies only numbers.
+   */
+  public synchronized UsageModel snapshot() {
+    UsageModel copy = new UsageModel();
+    copy.weight = this.weight;
+    copy.last = this.last;
+    copy.taps = this.taps;
+    for (Map.Entry<String,double[]> count : this.counts.entrySet()) {
+      copy.counts.put(count.getKey(), new double[] { count.getValue()[0] });
+    } // for
+    for (Map.Entry<String,HashMap<String,double[]>> from : this.follows.entrySet()) {
+      HashMap<String,double[]> next = copy.followers(from.getKey());
+      for (Map.Entry<String,double[]> to : from.getValue().entrySet()) {
+        next.put(to.getKey(), new double[] { to.getValue()[0] });
+      } // for
+    } // for
+    return copy;
+  } // snapshot()
+
+  public synchronized String toString() {
+    int pairs = 0;
+    for (HashMap<String,double[]> next : this.follows.values()) {
+      pairs += next.size();
+    } // for
+    return this.taps + " taps, " + this.counts.size() + " images, " + pairs + " pairs";
+  } // toString()
+
+  // +-----------------+---------------------------------------------
+  // | Private Methods |
+  // +-----------------+
+
+  /**
+   * The counts of the images tapped after imageLoc, made if need be.
+   */
+  HashMap<String,double[]> followers(String imageLoc) {
+    return this.follows.computeIfAbsent(imageLoc, loc -> new HashMap<String,double[]>());
+  } // followers(String)
+
+  /**
+   * Add amount to the count of key in counts.
+   */
+  static void add(HashMap<String,double[]> counts, String key, double amount) {
+    double[] count = counts.get(key);
+    if (count == null) {
+      counts.put(key, new double[] { amount });
+    } else {
+      count[0] += amount;
+    } // if/else
+  } // add(HashMap<String,double[]>, String, double)
+
+  /**
+   * The count of key in counts, or 0.
+   */
+  static double get(HashMap<String,double[]> counts, String key) {
+    double[] count = counts.get(key);
+    return (count == null) ? 0.0 : count[0];
+  } // get(HashMap<String,double[]>, String)
+
+  /**
+   * Divide every count, and the weight, by the weight, which leaves every
+   * score as it was. This is O(n), but comes only once in about forty
+   * half-lives of taps.
+   */
+  void rescale() {
+    double by = this.weight;
+    for (double[] count : this.counts.values()) {
+      count[0] /= by;
+    } // for
+    for (HashMap<String,double[]> next : this.follows.values()) {
+      for (double[] count : next.values()) {
+        count[0] /= by;
+      } // for
+    } // for
+    this.weight = 1.0;
+  } // rescale()
+} // class UsageModel